@@ -14,9 +14,12 @@ import org.apache.pdfbox.pdmodel.font.PDType0Font;
 import org.yaml.snakeyaml.Yaml;
 
 import javax.net.ssl.HttpsURLConnection;
+import javax.net.ssl.SSLContext;
 import java.io.*;
 import java.net.URL;
+import java.nio.charset.StandardCharsets;
 import java.nio.file.Files;
+import java.nio.file.Path;
 import java.nio.file.Paths;
 import java.security.SecureRandom;
 import java.time.LocalDate;
@@ -29,63 +32,107 @@ public class BigQueryWIFPDFBoxJp {
     private static final String CA_CERT_PATH = "resources/ca_chain.crt";
     private static final String FONT_PATH = "resources/fonts/NotoSansJP-Regular.ttf";
     private static final String CONFIG_YAML = "resources/config.yaml";
+    private static final String REPORT_ID = "jp";
     private static final float PAGE_WIDTH = PDRectangle.LETTER.getHeight();  // Landscape
     private static final float PAGE_HEIGHT = PDRectangle.LETTER.getWidth();
     private static final float MARGIN = 40;
     private static final float FONT_SIZE = 10;
     private static final float CELL_PADDING = 5;
     private static final float LINE_HEIGHT = FONT_SIZE + 2;
+    private static final int TEXT_CACHE_ENTRIES = 4096;  // bounds memory on high-cardinality columns
 
     public static void main(String[] args) throws Exception {
+        try (ReportMetrics.Endpoint metrics = ReportMetrics.startEndpoint()) {
+            String projectName = System.getenv("PROJECT_NAME");
+            String location = System.getenv("LOCATION");
 
-        String projectName = System.getenv("PROJECT_NAME");
-        String location = System.getenv("LOCATION");
+            String accessTokenString;
+            try (ReportMetrics.Phase phase = ReportMetrics.phase("token_fetch")) {
+                accessTokenString = getTokenFromSecureEndpoint();
+            }
 
-        String accessTokenString = getTokenFromSecureEndpoint();
+            AccessToken accessToken = new AccessToken(accessTokenString, null);
+            GoogleCredentials credentials = GoogleCredentials.create(accessToken)
+                    .createScoped(Collections.singletonList("https://www.googleapis.com/auth/cloud-platform"));
+
+            BigQuery bigquery = BigQueryOptions.newBuilder()
+                    .setCredentials(credentials)
+                    .setProjectId(projectName)
+                    .setLocation(location)
+                    .build()
+                    .getService();
+
+            Map<String, Integer> colWidths = loadColumnWidths();
+            exportReport(bigquery, projectName, colWidths, ColumnLayout.fromConfig(CONFIG_YAML),
+                    Paths.get("BigQuery_Report_" + LocalDate.now() + ".pdf"));
+            ReportMetrics.printSummary();
+        }
+    }
 
-        AccessToken accessToken = new AccessToken(accessTokenString, null);
-        GoogleCredentials credentials = GoogleCredentials.create(accessToken)
-                .createScoped(Collections.singletonList("https://www.googleapis.com/auth/cloud-platform"));
+    static Path exportReport(BigQuery bigquery, String projectName, Map<String, Integer> colWidths,
+                             ColumnLayout autoLayout, Path output) throws Exception {
 
-        BigQuery bigquery = BigQueryOptions.newBuilder()
-                .setCredentials(credentials)
-                .setProjectId(projectName)
-                .setLocation(location)
-                .build()
-                .getService();
+        long runStart = System.nanoTime();
 
         String query = "SELECT exchange, client_order_id, trader, status, message, instruction, updated_at, strategy, symbol, quantity, price, venue FROM `your-project.dataset.table`";
 
-        QueryJobConfiguration queryConfig = QueryJobConfiguration.newBuilder(query).setUseLegacySql(false).build();
-        JobId jobId = JobId.of(projectName, "WIF_QUERY_JOB_" + System.currentTimeMillis());
-        Job queryJob = bigquery.create(JobInfo.newBuilder(queryConfig).setJobId(jobId).build());
-        queryJob = queryJob.waitFor();
-
-        if (queryJob == null) {
-            throw new RuntimeException("Job no longer exists");
-        } else if (queryJob.getStatus().getError() != null) {
-            throw new RuntimeException(queryJob.getStatus().getError().toString());
+        TableResult result;
+        try (ReportMetrics.Phase phase = ReportMetrics.phase("query")) {
+            QueryJobConfiguration queryConfig = QueryJobConfiguration.newBuilder(query).setUseLegacySql(false).build();
+            JobId jobId = JobId.of(projectName, "WIF_QUERY_JOB_" + System.currentTimeMillis());
+            // query(config, jobId) creates the job, waits for it and throws on job error
+            result = bigquery.query(queryConfig, jobId);
         }
-
-        TableResult result = queryJob.getQueryResults();
         FieldList fields = result.getSchema().getFields();
 
+        // Auto layout: reuse widths learned for this schema, otherwise sample rows while grouping
+        Map<String, Integer> learned = autoLayout == null ? null : autoLayout.cached(REPORT_ID, fields);
+        ColumnLayout.Sampler sampler = autoLayout != null && learned == null ? autoLayout.sampler(fields) : null;
+        if (learned != null) colWidths = learned;
+
+        // Walk the result page by page so fetching and grouping are timed separately
         Map<String, List<FieldValueList>> groupedData = new TreeMap<>();
-        for (FieldValueList row : result.iterateAll()) {
-            String exchange = row.get("exchange").isNull() ? "UNKNOWN" : row.get("exchange").getStringValue();
-            groupedData.computeIfAbsent(exchange, k -> new ArrayList<>()).add(row);
+        long rowCount = 0;
+        TableResult page = result;
+        while (page != null) {
+            ReportMetrics.count("result_pages_total");
+            try (ReportMetrics.Phase phase = ReportMetrics.phase("grouping")) {
+                for (FieldValueList row : page.getValues()) {
+                    String exchange = row.get("exchange").isNull() ? "UNKNOWN" : row.get("exchange").getStringValue();
+                    groupedData.computeIfAbsent(exchange, k -> new ArrayList<>()).add(row);
+                    if (sampler != null) sampler.add(row);
+                    rowCount++;
+                }
+            }
+            try (ReportMetrics.Phase phase = ReportMetrics.phase("result_paging")) {
+                page = page.hasNextPage() ? page.getNextPage() : null;
+            }
         }
+        ReportMetrics.count("rows_total", rowCount);
 
-        Map<String, Integer> colWidths = loadColumnWidths();
-        generatePdf(groupedData, fields, colWidths);
+        generatePdf(groupedData, fields, colWidths, autoLayout, sampler, output);
+
+        ReportMetrics.observeRun(rowCount, groupedData.size(), Files.size(output), System.nanoTime() - runStart);
+        return output;
     }
 
     private static String getTokenFromSecureEndpoint() throws Exception {
-        URL url = new URL(WIF_ENDPOINT);
-        HttpsURLConnection conn = (HttpsURLConnection) url.openConnection();
+        return getTokenFromSecureEndpoint(WIF_ENDPOINT, CLIENT_PEM_PATH, CA_CERT_PATH);
+    }
+
+    static String getTokenFromSecureEndpoint(String endpoint, String clientPemPath, String caCertPath) throws Exception {
+        String clientPem = new String(Files.readAllBytes(Paths.get(clientPemPath)), StandardCharsets.UTF_8);
+        String caCert = new String(Files.readAllBytes(Paths.get(caCertPath)), StandardCharsets.UTF_8);
+
+        SSLContext sslContext = SSLContext.getInstance("TLS");
+        sslContext.init(
+                PemUtils.createKeyManagerFactory(clientPem).getKeyManagers(),
+                PemUtils.createTrustManagerFactory(caCert).getTrustManagers(),
+                new SecureRandom());
 
-        SSLContextBuilder sslContextBuilder = new SSLContextBuilder(CLIENT_PEM_PATH, CA_CERT_PATH);
-        conn.setSSLSocketFactory(sslContextBuilder.getSSLContext().getSocketFactory());
+        URL url = new URL(endpoint);
+        HttpsURLConnection conn = (HttpsURLConnection) url.openConnection();
+        conn.setSSLSocketFactory(sslContext.getSocketFactory());
         conn.setRequestMethod("GET");
 
         if (conn.getResponseCode() == 200) {
@@ -114,12 +161,23 @@ public class BigQueryWIFPDFBoxJp {
 
     private static void generatePdf(Map<String, List<FieldValueList>> data,
                                     FieldList fields,
-                                    Map<String, Integer> colWidths) throws IOException {
+                                    Map<String, Integer> colWidths,
+                                    ColumnLayout autoLayout,
+                                    ColumnLayout.Sampler sampler,
+                                    Path output) throws IOException {
 
         try (PDDocument doc = new PDDocument()) {
 
             PDFont font = PDType0Font.load(doc, new File(FONT_PATH));  // ✅ Japanese font
             PDFont boldFont = font;
+            EncodedTextCache textCache = new EncodedTextCache(TEXT_CACHE_ENTRIES);
+
+            if (sampler != null) {
+                try (ReportMetrics.Phase phase = ReportMetrics.phase("layout")) {
+                    colWidths = ColumnLayout.solve(sampler, font, boldFont, FONT_SIZE, 2 * CELL_PADDING, PAGE_WIDTH - 2 * MARGIN);
+                }
+                if (sampler.seen() > 0) autoLayout.store(REPORT_ID, fields, colWidths);
+            }
 
             int pageNumber = 1;
             int totalPages = data.size();
@@ -162,13 +220,14 @@ public class BigQueryWIFPDFBoxJp {
                         headers.add(field.getName());
                     }
 
-                    float rowHeight = computeMaxRowHeight(headers, font, colWidths);
+                    Map<String, List<String>> lineMap = new HashMap<>();
+                    float rowHeight = computeMaxRowHeight(textCache, headers, font, colWidths, lineMap);
 
                     // Draw header row
                     float x = tableX;
                     for (String col : headers) {
                         float colWidth = colWidths.getOrDefault(col, 60);
-                        drawWrappedCell(contentStream, boldFont, FONT_SIZE, col, x, rowY, colWidth, rowHeight);
+                        drawWrappedCell(contentStream, textCache, boldFont, FONT_SIZE, lineMap.get(col), x, rowY);
                         x += colWidth;
                     }
 
@@ -176,14 +235,19 @@ public class BigQueryWIFPDFBoxJp {
 
                     // Draw data rows
                     for (FieldValueList row : rows) {
-                        float maxRowHeight = computeMaxRowHeightForRow(row, headers, font, colWidths);
-
-                        x = tableX;
-                        for (String col : headers) {
-                            float colWidth = colWidths.getOrDefault(col, 60);
-                            String text = row.get(col).isNull() ? "" : row.get(col).getValue().toString();
-                            drawWrappedCell(contentStream, font, FONT_SIZE, text, x, rowY, colWidth, maxRowHeight);
-                            x += colWidth;
+                        // Wrap every cell once; the same lines size the row and get drawn
+                        float maxRowHeight;
+                        try (ReportMetrics.Phase phase = ReportMetrics.phase("wrap")) {
+                            maxRowHeight = computeMaxRowHeightForRow(textCache, row, headers, font, colWidths, lineMap);
+                        }
+
+                        try (ReportMetrics.Phase phase = ReportMetrics.phase("draw")) {
+                            x = tableX;
+                            for (String col : headers) {
+                                float colWidth = colWidths.getOrDefault(col, 60);
+                                drawWrappedCell(contentStream, textCache, font, FONT_SIZE, lineMap.get(col), x, rowY);
+                                x += colWidth;
+                            }
                         }
                         rowY -= maxRowHeight;
                     }
@@ -192,15 +256,17 @@ public class BigQueryWIFPDFBoxJp {
                 pageNumber++;
             }
 
-            doc.save("BigQuery_Report_" + LocalDate.now() + ".pdf");
+            try (ReportMetrics.Phase phase = ReportMetrics.phase("save")) {
+                doc.save(output.toFile());
+            }
             System.out.println("✅ PDF exported successfully.");
         }
     }
 
-    private static void drawWrappedCell(PDPageContentStream contentStream, PDFont font, float fontSize,
-                                        String text, float x, float y, float width, float height) throws IOException {
+    private static void drawWrappedCell(PDPageContentStream contentStream, EncodedTextCache textCache,
+                                        PDFont font, float fontSize,
+                                        List<String> lines, float x, float y) throws IOException {
 
-        List<String> lines = wrapText(text, font, fontSize, width - 2 * CELL_PADDING);
         float leading = LINE_HEIGHT;
         float startY = y - CELL_PADDING - fontSize;
 
@@ -208,24 +274,52 @@ public class BigQueryWIFPDFBoxJp {
         for (String line : lines) {
             contentStream.beginText();
             contentStream.newLineAtOffset(x + CELL_PADDING, startY);
-            contentStream.showText(line);
+            textCache.showText(contentStream, font, line);
             contentStream.endText();
             startY -= leading;
         }
     }
 
-    private static List<String> wrapText(String text, PDFont font, float fontSize, float maxWidth) throws IOException {
+    private static List<String> wrapText(EncodedTextCache textCache, String text, PDFont font, float fontSize,
+                                         float maxWidth) throws IOException {
+        ReportMetrics.count("wrap_calls_total");
         List<String> lines = new ArrayList<>();
         StringBuilder line = new StringBuilder();
+        float lineWidth = 0;  // summed from word and space widths; candidate lines are never measured
+        float space = textCache.width(font, fontSize, " ");
 
         for (String word : text.split(" ")) {
-            String testLine = line + (line.length() == 0 ? "" : " ") + word;
-            float width = font.getStringWidth(testLine) / 1000 * fontSize;
+            float wordWidth = textCache.width(font, fontSize, word);
+
+            // Unspaced Japanese arrives as one long "word": break it between characters
+            if (wordWidth > maxWidth) {
+                if (!line.isEmpty()) lines.add(line.toString());
+                line = new StringBuilder();
+                lineWidth = 0;
+                for (int offset = 0; offset < word.length(); ) {
+                    String ch = word.substring(offset, offset + Character.charCount(word.codePointAt(offset)));
+                    float width = textCache.width(font, fontSize, ch);
+                    if (lineWidth + width > maxWidth && !line.isEmpty()) {
+                        lines.add(line.toString());
+                        line = new StringBuilder();
+                        lineWidth = 0;
+                    }
+                    line.append(ch);
+                    lineWidth += width;
+                    offset += ch.length();
+                }
+                continue;
+            }
+
+            float width = line.length() == 0 ? wordWidth : lineWidth + space + wordWidth;
             if (width > maxWidth) {
                 if (!line.isEmpty()) lines.add(line.toString());
                 line = new StringBuilder(word);
+                lineWidth = wordWidth;
             } else {
-                line = new StringBuilder(testLine);
+                if (line.length() > 0) line.append(' ');
+                line.append(word);
+                lineWidth = width;
             }
         }
 
@@ -233,22 +327,26 @@ public class BigQueryWIFPDFBoxJp {
         return lines;
     }
 
-    private static float computeMaxRowHeight(List<String> texts, PDFont font, Map<String, Integer> colWidths) throws IOException {
+    private static float computeMaxRowHeight(EncodedTextCache textCache, List<String> texts, PDFont font, Map<String, Integer> colWidths,
+                                             Map<String, List<String>> lineMap) throws IOException {
         float maxHeight = 0;
         for (String col : texts) {
             float colWidth = colWidths.getOrDefault(col, 60);
-            List<String> lines = wrapText(col, font, FONT_SIZE, colWidth - 2 * CELL_PADDING);
+            List<String> lines = wrapText(textCache, col, font, FONT_SIZE, colWidth - 2 * CELL_PADDING);
+            lineMap.put(col, lines);
             maxHeight = Math.max(maxHeight, lines.size() * LINE_HEIGHT + 2 * CELL_PADDING);
         }
         return maxHeight;
     }
 
-    private static float computeMaxRowHeightForRow(FieldValueList row, List<String> headers, PDFont font, Map<String, Integer> colWidths) throws IOException {
+    private static float computeMaxRowHeightForRow(EncodedTextCache textCache, FieldValueList row, List<String> headers, PDFont font, Map<String, Integer> colWidths,
+                                                   Map<String, List<String>> lineMap) throws IOException {
         float maxHeight = 0;
         for (String col : headers) {
             float colWidth = colWidths.getOrDefault(col, 60);
             String text = row.get(col).isNull() ? "" : row.get(col).getValue().toString();
-            List<String> lines = wrapText(text, font, FONT_SIZE, colWidth - 2 * CELL_PADDING);
+            List<String> lines = wrapText(textCache, text, font, FONT_SIZE, colWidth - 2 * CELL_PADDING);
+            lineMap.put(col, lines);
             maxHeight = Math.max(maxHeight, lines.size() * LINE_HEIGHT + 2 * CELL_PADDING);
         }
         return maxHeight;
@@ -33,54 +33,112 @@ public class BigQueryWIFPDFBoxNew {
     static final String CLIENT_PEM_PATH = WIF_HOME + "/client.pem";
     static final String CA_CERT_PATH    = WIF_HOME + "/ca_chain.crt";
     static final String CONFIG_YAML_PATH = "resources/config.yaml";
+    static final int    TEXT_CACHE_ENTRIES = 4096;   // encoded cell texts kept per document (LRU)
+    static final String REPORT_ID = "new";           // auto-layout cache key prefix
 
     // ─────────────────────────────────────────────────────────────────────────────
     //  MAIN
     // ─────────────────────────────────────────────────────────────────────────────
     public static void main(String[] args) throws Exception {
+        try (ReportMetrics.Endpoint metrics = ReportMetrics.startEndpoint()) {
+            // 1) Retrieve WIF access-token via mTLS
+            String token;
+            try (ReportMetrics.Phase phase = ReportMetrics.phase("token_fetch")) {
+                token = getTokenFromSecureEndpoint();
+            }
+
+            // 2) BigQuery client
+            BigQuery bigquery = clientOptions(token, System.getenv("PROJECT_NAME"), System.getenv("LOCATION"))
+                    .build()
+                    .getService();
+
+            // 3-5) Query, group and render
+            exportReport(bigquery, loadColumnWidths(CONFIG_YAML_PATH), ColumnLayout.fromConfig(CONFIG_YAML_PATH),
+                         Paths.get("BigQueryExport.pdf"));
+            ReportMetrics.printSummary();
+        }
+    }
 
-        // 1) Retrieve WIF access-token via mTLS
-        String token = getTokenFromSecureEndpoint();
+    // ─────────────────────────────────────────────────────────────────────────────
+    //  CLIENT  (also built by StartupProbe, which points it at a loopback host)
+    // ─────────────────────────────────────────────────────────────────────────────
+    static BigQueryOptions.Builder clientOptions(String token, String projectId, String location) {
         AccessToken accessToken = new AccessToken(token, null);
         GoogleCredentials credentials = GoogleCredentials.create(accessToken)
                 .createScoped(Collections.singletonList("https://www.googleapis.com/auth/cloud-platform"));
 
-        // 2) BigQuery client
-        BigQuery bigquery = BigQueryOptions.newBuilder()
+        return BigQueryOptions.newBuilder()
                 .setCredentials(credentials)
-                .setProjectId(System.getenv("PROJECT_NAME"))
-                .setLocation(System.getenv("LOCATION"))
-                .build()
-                .getService();
+                .setProjectId(projectId)
+                .setLocation(location);
+    }
+
+    // ─────────────────────────────────────────────────────────────────────────────
+    //  EXPORT  (everything after the client is built; also driven by the load test)
+    // ─────────────────────────────────────────────────────────────────────────────
+    static Path exportReport(BigQuery bigquery,
+                             Map<String, Integer> colWidths,
+                             ColumnLayout autoLayout,
+                             Path output) throws Exception {
+
+        long runStart = System.nanoTime();
 
         // 3) Query data
         String query =
             "SELECT client_order_id, exchange, trader, status " +
             "FROM `db-dev-rlvd-cag-001-1.cag_bq.japan_client_order` " +
             "LIMIT 100";
-        TableResult result = bigquery.query(QueryJobConfiguration.newBuilder(query).build());
+        TableResult result;
+        try (ReportMetrics.Phase phase = ReportMetrics.phase("query")) {
+            result = bigquery.query(QueryJobConfiguration.newBuilder(query).build());
+        }
+        FieldList fields = result.getSchema().getFields();
+
+        // Auto layout: widths learned for this schema, else sample rows during grouping
+        Map<String, Integer> learned = autoLayout == null ? null : autoLayout.cached(REPORT_ID, fields);
+        ColumnLayout.Sampler sampler = autoLayout != null && learned == null ? autoLayout.sampler(fields) : null;
+        if (learned != null) colWidths = learned;
 
-        // 4) Group rows by exchange (each exchange ➜ new page)
+        // 4) Group rows by exchange (each exchange ➜ new page),
+        //    walking result pages so fetch and grouping are timed apart
         Map<String, List<FieldValueList>> grouped = new LinkedHashMap<>();
-        for (FieldValueList row : result.iterateAll()) {
-            String exchange = row.get("exchange").isNull() ? "UNKNOWN"
-                                                           : row.get("exchange").getStringValue();
-            grouped.computeIfAbsent(exchange, k -> new ArrayList<>()).add(row);
+        long rowCount = 0;
+        for (TableResult page = result; page != null; ) {
+            ReportMetrics.count("result_pages_total");
+            try (ReportMetrics.Phase phase = ReportMetrics.phase("grouping")) {
+                for (FieldValueList row : page.getValues()) {
+                    String exchange = row.get("exchange").isNull() ? "UNKNOWN"
+                                                                   : row.get("exchange").getStringValue();
+                    grouped.computeIfAbsent(exchange, k -> new ArrayList<>()).add(row);
+                    if (sampler != null) sampler.add(row);
+                    rowCount++;
+                }
+            }
+            try (ReportMetrics.Phase phase = ReportMetrics.phase("result_paging")) {
+                page = page.hasNextPage() ? page.getNextPage() : null;
+            }
         }
+        ReportMetrics.count("rows_total", rowCount);
 
-        // 5) Column widths (points) from YAML
-        Map<String, Integer> colWidths = loadColumnWidths(CONFIG_YAML_PATH);
+        // 5) Generate the PDF
+        generatePdf(grouped, fields, colWidths, autoLayout, sampler, output);
 
-        // 6) Generate the PDF
-        generatePdf(grouped, result.getSchema().getFields(), colWidths);
+        ReportMetrics.observeRun(rowCount, grouped.size(), Files.size(output), System.nanoTime() - runStart);
+        return output;
     }
 
     // ─────────────────────────────────────────────────────────────────────────────
     //  SECURE-ENDPOINT TOKEN
     // ─────────────────────────────────────────────────────────────────────────────
     private static String getTokenFromSecureEndpoint() throws Exception {
-        String clientPem = Files.readString(Paths.get(CLIENT_PEM_PATH));
-        String caCert    = Files.readString(Paths.get(CA_CERT_PATH));
+        return getTokenFromSecureEndpoint(WIF_ENDPOINT, CLIENT_PEM_PATH, CA_CERT_PATH);
+    }
+
+    static String getTokenFromSecureEndpoint(String endpoint,
+                                             String clientPemPath,
+                                             String caCertPath) throws Exception {
+        String clientPem = Files.readString(Paths.get(clientPemPath));
+        String caCert    = Files.readString(Paths.get(caCertPath));
 
         SSLContext sslContext = SSLContext.getInstance("TLS");
         sslContext.init(
@@ -89,7 +147,7 @@ public class BigQueryWIFPDFBoxNew {
             new SecureRandom()
         );
 
-        URL url = new URL(WIF_ENDPOINT);
+        URL url = new URL(endpoint);
         HttpsURLConnection conn = (HttpsURLConnection) url.openConnection();
         conn.setSSLSocketFactory(sslContext.getSocketFactory());
         conn.setRequestMethod("GET");
@@ -98,14 +156,18 @@ public class BigQueryWIFPDFBoxNew {
             throw new RuntimeException("Failed to retrieve token: " + conn.getResponseCode());
         }
         try (BufferedReader reader = new BufferedReader(new InputStreamReader(conn.getInputStream()))) {
-            return new ObjectMapper().readTree(reader).get("access_token").asText();
+            return readAccessToken(reader);
         }
     }
 
+    static String readAccessToken(Reader reader) throws IOException {
+        return new ObjectMapper().readTree(reader).get("access_token").asText();
+    }
+
     // ─────────────────────────────────────────────────────────────────────────────
     //  YAML COLUMN WIDTHS
     // ─────────────────────────────────────────────────────────────────────────────
-    private static Map<String, Integer> loadColumnWidths(String configPath) throws IOException {
+    static Map<String, Integer> loadColumnWidths(String configPath) throws IOException {
         try (InputStream in = new FileInputStream(configPath)) {
             Yaml yaml = new Yaml();
             Map<String, Integer> widths = new HashMap<>();
@@ -121,14 +183,27 @@ public class BigQueryWIFPDFBoxNew {
     // ─────────────────────────────────────────────────────────────────────────────
     private static void generatePdf(Map<String, List<FieldValueList>> data,
                                     FieldList fields,
-                                    Map<String, Integer> colWidths) throws IOException {
+                                    Map<String, Integer> colWidths,
+                                    ColumnLayout autoLayout,
+                                    ColumnLayout.Sampler sampler,
+                                    Path output) throws IOException {
 
         PDFont font      = PDType1Font.HELVETICA;
         PDFont boldFont  = PDType1Font.HELVETICA_BOLD;
         float  fontSize  = 8f;
         float  leading   = 1.5f * fontSize;
 
+        // ── AUTO LAYOUT (landscape width minus both 50pt margins, 4pt cell padding) ──
+        if (sampler != null) {
+            try (ReportMetrics.Phase phase = ReportMetrics.phase("layout")) {
+                colWidths = ColumnLayout.solve(sampler, font, boldFont, fontSize, 4,
+                                               PDRectangle.LETTER.getHeight() - 2 * 50);
+            }
+            if (sampler.seen() > 0) autoLayout.store(REPORT_ID, fields, colWidths);
+        }
+
         PDDocument doc   = new PDDocument();
+        EncodedTextCache textCache = new EncodedTextCache(TEXT_CACHE_ENTRIES);
         int pageNumber   = 1;
         int totalPages   = data.size();
 
@@ -169,7 +244,7 @@ public class BigQueryWIFPDFBoxNew {
                 float maxHeaderH = 0;
                 for (String h : headers) {
                     float w = colWidths.getOrDefault(h, 60);
-                    List<String> lines = wrapText(h, boldFont, fontSize, w - 4);
+                    List<String> lines = wrapText(textCache, h, boldFont, fontSize, w - 4);
                     maxHeaderH = Math.max(maxHeaderH, lines.size() * leading + 4);
                 }
 
@@ -177,8 +252,8 @@ public class BigQueryWIFPDFBoxNew {
                 float xPos = margin;
                 for (String h : headers) {
                     float w = colWidths.getOrDefault(h, 60);
-                    drawCell(content, xPos, yPos, w, maxHeaderH,
-                             wrapText(h, boldFont, fontSize, w - 4), boldFont, fontSize);
+                    drawCell(content, textCache, xPos, yPos, w, maxHeaderH,
+                             wrapText(textCache, h, boldFont, fontSize, w - 4), boldFont, fontSize);
                     xPos += w;
                 }
                 yPos -= maxHeaderH;
@@ -189,20 +264,24 @@ public class BigQueryWIFPDFBoxNew {
                     float maxRowH = 0;
                     Map<String, List<String>> lineMap = new HashMap<>();
 
-                    for (String col : headers) {
-                        float w   = colWidths.getOrDefault(col, 60);
-                        String txt = row.get(col).isNull() ? "" : row.get(col).getStringValue();
-                        List<String> wrapped = wrapText(txt, font, fontSize, w - 4);
-                        lineMap.put(col, wrapped);
-                        maxRowH = Math.max(maxRowH, wrapped.size() * leading + 4);
+                    try (ReportMetrics.Phase phase = ReportMetrics.phase("wrap")) {
+                        for (String col : headers) {
+                            float w   = colWidths.getOrDefault(col, 60);
+                            String txt = row.get(col).isNull() ? "" : row.get(col).getStringValue();
+                            List<String> wrapped = wrapText(textCache, txt, font, fontSize, w - 4);
+                            lineMap.put(col, wrapped);
+                            maxRowH = Math.max(maxRowH, wrapped.size() * leading + 4);
+                        }
                     }
 
-                    xPos = margin;
-                    for (String col : headers) {
-                        float w = colWidths.getOrDefault(col, 60);
-                        drawCell(content, xPos, yPos, w, maxRowH,
-                                 lineMap.get(col), font, fontSize);
-                        xPos += w;
+                    try (ReportMetrics.Phase phase = ReportMetrics.phase("draw")) {
+                        xPos = margin;
+                        for (String col : headers) {
+                            float w = colWidths.getOrDefault(col, 60);
+                            drawCell(content, textCache, xPos, yPos, w, maxRowH,
+                                     lineMap.get(col), font, fontSize);
+                            xPos += w;
+                        }
                     }
                     yPos -= maxRowH;
                 }
@@ -217,15 +296,18 @@ public class BigQueryWIFPDFBoxNew {
             }
         }
 
-        doc.save("BigQueryExport.pdf");
+        try (ReportMetrics.Phase phase = ReportMetrics.phase("save")) {
+            doc.save(output.toFile());
+        }
         doc.close();
-        System.out.println("✅ PDF saved as BigQueryExport.pdf");
+        System.out.println("✅ PDF saved as " + output);
     }
 
     // ─────────────────────────────────────────────────────────────────────────────
     //  TABLE CELL RENDERING
     // ─────────────────────────────────────────────────────────────────────────────
     private static void drawCell(PDPageContentStream content,
+                                 EncodedTextCache textCache,
                                  float x, float y,
                                  float width, float height,
                                  List<String> lines,
@@ -241,7 +323,7 @@ public class BigQueryWIFPDFBoxNew {
         content.setFont(font, fontSize);
         content.newLineAtOffset(x + 2, y - fontSize - 2);
         for (String l : lines) {
-            content.showText(l);
+            textCache.showText(content, font, l);
             content.newLineAtOffset(0, -1.5f * fontSize);
         }
         content.endText();
@@ -250,86 +332,66 @@ public class BigQueryWIFPDFBoxNew {
     // ─────────────────────────────────────────────────────────────────────────────
     //  TEXT WRAPPING  (★ NEW LOGIC ★)
     // ─────────────────────────────────────────────────────────────────────────────
-    private static List<String> wrapText(String text, PDFont font,
+    private static List<String> wrapText(EncodedTextCache textCache, String text, PDFont font,
                                          float fontSize, float maxWidth) throws IOException {
 
+        ReportMetrics.count("wrap_calls_total");
         List<String> out = new ArrayList<>();
         if (text == null || text.isEmpty()) return out;
 
         String[] words = text.split("\\s+");
         StringBuilder line = new StringBuilder();
+        float lineWidth = 0;   // widths add up, so lines are summed rather than re-measured
+        float space = stringWidth(textCache, font, fontSize, " ");
 
         for (String word : words) {
+            float wordWidth = stringWidth(textCache, font, fontSize, word);
+
             // If the word itself is wider than the column, split the word
-            if (stringWidth(font, fontSize, word) > maxWidth) {
+            if (wordWidth > maxWidth) {
                 // Flush current line before breaking the long word
                 if (line.length() > 0) {
                     out.add(line.toString());
                     line.setLength(0);
                 }
                 StringBuilder segment = new StringBuilder();
+                float segmentWidth = 0;
                 for (char c : word.toCharArray()) {
-                    if (stringWidth(font, fontSize, segment.toString() + c) > maxWidth) {
+                    float charWidth = stringWidth(textCache, font, fontSize, String.valueOf(c));
+                    if (segmentWidth + charWidth > maxWidth) {
                         out.add(segment.toString());
                         segment.setLength(0);
+                        segmentWidth = 0;
                     }
                     segment.append(c);
+                    segmentWidth += charWidth;
                 }
-                if (segment.length() > 0) {
-                    // Remaining chars of the long word (may become start of next line)
-                    line.append(segment);
-                }
+                // Remaining chars of the long word (may become start of next line)
+                line.append(segment);
+                lineWidth = segmentWidth;
                 continue;
             }
 
             // Normal word-wrapping
-            String test = line.length() == 0 ? word : line + " " + word;
-            if (stringWidth(font, fontSize, test) > maxWidth) {
+            float test = line.length() == 0 ? wordWidth : lineWidth + space + wordWidth;
+            if (test > maxWidth) {
                 out.add(line.toString());
                 line.setLength(0);
                 line.append(word);
+                lineWidth = wordWidth;
             } else {
-                line.setLength(0);
-                line.append(test);
+                if (line.length() > 0) line.append(' ');
+                line.append(word);
+                lineWidth = test;
             }
         }
         if (line.length() > 0) out.add(line.toString());
         return out;
     }
 
-    // Helper: fast string width in points
-    private static float stringWidth(PDFont font, float fontSize,
+    // Helper: width in points of a word or character, memoised per document
+    private static float stringWidth(EncodedTextCache textCache, PDFont font, float fontSize,
                                      String text) throws IOException {
-        return font.getStringWidth(text) / 1000f * fontSize;
+        return textCache.width(font, fontSize, text);
     }
 }
-
-
-
-// (A) Header Left (smaller font)
-content.beginText();
-content.setFont(font, headerFontSize);
-content.newLineAtOffset(margin, yPos);
-content.showText("Exchange: " + entry.getKey());
-content.endText();
-
-// (B) Header Center (smaller font, still bold)
-String centerTitle = "BigQuery Data Export";
-float centerX = page.getMediaBox().getWidth() / 2;
-float centerTextWidth = boldFont.getStringWidth(centerTitle) / 1000f * headerFontSize;
-content.beginText();
-content.setFont(boldFont, headerFontSize);
-content.newLineAtOffset(centerX - (centerTextWidth / 2f), yPos);
-content.showText(centerTitle);
-content.endText();
-
-// (C) Header Right: Creation date (new)
-String creation = "Creation date: " +
-        LocalDateTime.now().format(DateTimeFormatter.ofPattern("yyyy-MM-dd HH:mm:ss"));
-float rightTextWidth = font.getStringWidth(creation) / 1000f * headerFontSize;
-float rightX = page.getMediaBox().getWidth() - margin - rightTextWidth;
-content.beginText();
-content.setFont(font, headerFontSize);
-content.newLineAtOffset(rightX, yPos);
-content.showText(creation);
-content.endText();
\ No newline at end of file
@@ -0,0 +1,253 @@
+package org.example;
+
+import com.google.cloud.bigquery.Field;
+import com.google.cloud.bigquery.FieldList;
+import com.google.cloud.bigquery.FieldValue;
+import com.google.cloud.bigquery.FieldValueList;
+import org.apache.pdfbox.pdmodel.font.PDFont;
+import org.yaml.snakeyaml.DumperOptions;
+import org.yaml.snakeyaml.Yaml;
+
+import java.io.IOException;
+import java.io.InputStream;
+import java.io.Writer;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.Paths;
+import java.util.ArrayList;
+import java.util.HashMap;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.Random;
+import java.util.concurrent.ConcurrentHashMap;
+
+/**
+ * Data-driven column widths ({@code autoLayout: true} in config.yaml).
+ *
+ * While the report groups its rows, a {@link Sampler} keeps a uniform reservoir sample of
+ * whole rows. Once the font is loaded, {@link #solve} measures the sampled values and
+ * hands out the page width greedily, a few points at a time, to whichever column most
+ * reduces the estimated total height of the sampled rows. A row is as tall as its
+ * tallest cell, and a cell needs about {@code textWidth / usableWidth} lines. That holds
+ * because both reports' wrappers break a word wider than the cell between characters,
+ * so unspaced Japanese wraps like everything else.
+ *
+ * Results are cached per report and schema: in memory, and in the YAML file named by
+ * {@code layoutCache} when that is set. Delete the file to re-learn widths after the data
+ * changes shape.
+ */
+public final class ColumnLayout {
+
+    static final int   SAMPLE_ROWS = 512;
+    static final float MIN_WIDTH   = 30f;
+    static final float STEP        = 4f;
+
+    private final Path cacheFile;
+    private final Map<String, Map<String, Integer>> memory = new ConcurrentHashMap<>();
+
+    private ColumnLayout(Path cacheFile) {
+        this.cacheFile = cacheFile;
+    }
+
+    /** Auto layout as configured in {@code configPath}, or {@code null} when it is off. */
+    public static ColumnLayout fromConfig(String configPath) throws IOException {
+        try (InputStream in = Files.newInputStream(Paths.get(configPath))) {
+            Map<String, Object> root = new Yaml().load(in);
+            if (root == null || !Boolean.TRUE.equals(root.get("autoLayout"))) return null;
+            Object cache = root.get("layoutCache");
+            return new ColumnLayout(cache == null ? null : Paths.get(cache.toString()));
+        }
+    }
+
+    /** Auto layout without a cache file (widths are still reused within this JVM). */
+    public static ColumnLayout inMemory() {
+        return new ColumnLayout(null);
+    }
+
+    // ─────────────────────────────────────────────────────────────────────────────
+    //  CACHE
+    // ─────────────────────────────────────────────────────────────────────────────
+
+    /** Previously computed widths for this report and schema, or {@code null}. */
+    public Map<String, Integer> cached(String report, FieldList fields) throws IOException {
+        String key = cacheKey(report, fields);
+        Map<String, Integer> widths = memory.get(key);
+        if (widths == null && cacheFile != null) {
+            widths = readCacheFile().get(key);
+            if (widths != null) memory.put(key, widths);
+        }
+        return widths;
+    }
+
+    public void store(String report, FieldList fields, Map<String, Integer> widths) throws IOException {
+        String key = cacheKey(report, fields);
+        memory.put(key, widths);
+        if (cacheFile == null) return;
+
+        Map<String, Map<String, Integer>> all = readCacheFile();
+        all.put(key, widths);
+        DumperOptions options = new DumperOptions();
+        options.setDefaultFlowStyle(DumperOptions.FlowStyle.BLOCK);
+        if (cacheFile.getParent() != null) Files.createDirectories(cacheFile.getParent());
+        try (Writer out = Files.newBufferedWriter(cacheFile, StandardCharsets.UTF_8)) {
+            new Yaml(options).dump(Map.of("layouts", all), out);
+        }
+    }
+
+    @SuppressWarnings("unchecked")
+    private Map<String, Map<String, Integer>> readCacheFile() throws IOException {
+        Map<String, Map<String, Integer>> layouts = new LinkedHashMap<>();
+        if (!Files.exists(cacheFile)) return layouts;
+        try (InputStream in = Files.newInputStream(cacheFile)) {
+            Map<String, Object> root = new Yaml().load(in);
+            if (root != null && root.get("layouts") instanceof Map) {
+                layouts.putAll((Map<String, Map<String, Integer>>) root.get("layouts"));
+            }
+        }
+        return layouts;
+    }
+
+    static String cacheKey(String report, FieldList fields) {
+        StringBuilder sb = new StringBuilder(report).append('|');
+        for (Field field : fields) {
+            sb.append(field.getName()).append(':').append(field.getType()).append(',');
+        }
+        return sb.toString();
+    }
+
+    // ─────────────────────────────────────────────────────────────────────────────
+    //  SAMPLING
+    // ─────────────────────────────────────────────────────────────────────────────
+
+    public Sampler sampler(FieldList fields) {
+        List<String> columns = new ArrayList<>();
+        for (Field field : fields) columns.add(field.getName());
+        return new Sampler(columns, SAMPLE_ROWS);
+    }
+
+    /** Uniform reservoir sample of rows, filled in the same pass that groups the result. */
+    public static final class Sampler {
+        final List<String> columns;
+        final List<String[]> rows;
+        private final int capacity;
+        private final Random random = new Random(42);
+        private long seen;
+
+        Sampler(List<String> columns, int capacity) {
+            this.columns = columns;
+            this.capacity = capacity;
+            this.rows = new ArrayList<>(capacity);
+        }
+
+        public void add(FieldValueList row) {
+            seen++;
+            if (rows.size() < capacity) {
+                rows.add(values(row));
+            } else {
+                long slot = (long) (random.nextDouble() * seen);
+                if (slot < capacity) rows.set((int) slot, values(row));
+            }
+        }
+
+        private String[] values(FieldValueList row) {
+            String[] values = new String[columns.size()];
+            for (int c = 0; c < values.length; c++) {
+                FieldValue v = row.get(columns.get(c));
+                values[c] = v.isNull() ? "" : v.getValue().toString();
+            }
+            return values;
+        }
+
+        public long seen() {
+            return seen;
+        }
+    }
+
+    // ─────────────────────────────────────────────────────────────────────────────
+    //  SOLVER
+    // ─────────────────────────────────────────────────────────────────────────────
+
+    /**
+     * Widths (points) for every sampled column that fit in {@code availableWidth}.
+     *
+     * @param padding total horizontal padding inside a cell (left + right)
+     */
+    public static Map<String, Integer> solve(Sampler sampler, PDFont font, PDFont headerFont, float fontSize,
+                                             float padding, float availableWidth) throws IOException {
+        int cols = sampler.columns.size();
+        int rows = sampler.rows.size();
+
+        // Measure every sampled cell once
+        float[][] textWidth = new float[rows][cols];
+        for (int r = 0; r < rows; r++) {
+            String[] values = sampler.rows.get(r);
+            for (int c = 0; c < cols; c++) {
+                textWidth[r][c] = values[c].isEmpty() ? 0 : font.getStringWidth(values[c]) / 1000f * fontSize;
+            }
+        }
+
+        // Start at the header width (so headers stay on one line) or MIN_WIDTH
+        float[] width = new float[cols];
+        float used = 0;
+        for (int c = 0; c < cols; c++) {
+            float header = headerFont.getStringWidth(sampler.columns.get(c)) / 1000f * fontSize + padding;
+            width[c] = Math.max(MIN_WIDTH, header);
+            used += width[c];
+        }
+        if (used > availableWidth) {
+            float scale = availableWidth / used;
+            for (int c = 0; c < cols; c++) width[c] = Math.max(padding + 1, width[c] * scale);
+            return toMap(sampler.columns, width);
+        }
+
+        // Greedy: give STEP points to the column that lowers total sampled height most
+        float[][] lines = new float[rows][cols];
+        for (int r = 0; r < rows; r++) {
+            for (int c = 0; c < cols; c++) lines[r][c] = lines(textWidth[r][c], width[c] - padding);
+        }
+        while (used + STEP <= availableWidth) {
+            int best = -1;
+            double bestGain = 1e-6;
+            for (int c = 0; c < cols; c++) {
+                double gain = 0;
+                for (int r = 0; r < rows; r++) {
+                    float current = lines[r][c];
+                    if (current <= 1) continue;
+                    float widened = lines(textWidth[r][c], width[c] + STEP - padding);
+                    float otherMax = 0;
+                    for (int o = 0; o < cols; o++) {
+                        if (o != c) otherMax = Math.max(otherMax, lines[r][o]);
+                    }
+                    gain += Math.max(current, otherMax) - Math.max(widened, otherMax);
+                }
+                if (gain > bestGain) {
+                    bestGain = gain;
+                    best = c;
+                }
+            }
+            if (best < 0) break;  // every sampled row is already as short as widening can make it
+
+            width[best] += STEP;
+            used += STEP;
+            for (int r = 0; r < rows; r++) lines[r][best] = lines(textWidth[r][best], width[best] - padding);
+        }
+        return toMap(sampler.columns, width);
+    }
+
+    /**
+     * Estimated line count; kept fractional so the greedy step always sees progress,
+     * and never below one line for non-empty text.
+     */
+    private static float lines(float textWidth, float usable) {
+        if (textWidth == 0) return 0;
+        return Math.max(1f, textWidth / Math.max(usable, 1f));
+    }
+
+    private static Map<String, Integer> toMap(List<String> columns, float[] width) {
+        Map<String, Integer> widths = new HashMap<>();
+        for (int c = 0; c < columns.size(); c++) widths.put(columns.get(c), (int) Math.floor(width[c]));
+        return widths;
+    }
+}
@@ -0,0 +1,128 @@
+package org.example;
+
+import org.apache.pdfbox.pdfwriter.COSWriter;
+import org.apache.pdfbox.pdmodel.PDPageContentStream;
+import org.apache.pdfbox.pdmodel.font.PDFont;
+
+import java.io.ByteArrayOutputStream;
+import java.io.IOException;
+import java.nio.charset.StandardCharsets;
+import java.util.LinkedHashMap;
+import java.util.Map;
+
+/**
+ * Per-document LRU cache of (font, text) → encoded {@code Tj} operator bytes and width.
+ *
+ * {@link PDPageContentStream#showText(String)} re-encodes the string and re-records every
+ * code point for subsetting on each call. Report columns such as status, exchange, venue
+ * and trader repeat thousands of times, so the encoded bytes are built once (exactly as
+ * showText would write them) and appended raw afterwards. Glyphs are added to the font
+ * subset when the bytes are built, which is enough because the subset is per font and
+ * the font is per document.
+ *
+ * The word-wrappers measure the same words just as often, so {@link #width} memoises word
+ * widths in a second, separate LRU. The wrappers add up word, space and character widths
+ * themselves rather than measuring candidate lines, so one-off strings never reach either
+ * cache, and the operator cache only ever holds text that is actually drawn.
+ *
+ * Not thread-safe; one instance per {@code PDDocument}.
+ */
+public final class EncodedTextCache {
+
+    private static final byte[] TJ = " Tj\n".getBytes(StandardCharsets.US_ASCII);
+
+    private final Map<Key, byte[]> entries;  // drawn text → Tj operator bytes
+    private final Map<Key, Float> widths;    // words and characters → glyph space width (1/1000 em)
+
+    public EncodedTextCache(int maxEntries) {
+        if (maxEntries < 1) throw new IllegalArgumentException("maxEntries must be positive: " + maxEntries);
+        this.entries = lru(maxEntries);
+        this.widths = lru(maxEntries);
+    }
+
+    private static <V> Map<Key, V> lru(int maxEntries) {
+        return new LinkedHashMap<Key, V>(Math.min(maxEntries, 1024), 0.75f, true) {
+            @Override
+            protected boolean removeEldestEntry(Map.Entry<Key, V> eldest) {
+                return size() > maxEntries;
+            }
+        };
+    }
+
+    /**
+     * Same output as {@code content.showText(text)}; the caller must already be inside
+     * {@code beginText()} with {@code font} set.
+     */
+    @SuppressWarnings("deprecation")
+    public void showText(PDPageContentStream content, PDFont font, String text) throws IOException {
+        Key key = new Key(font, text);
+        byte[] operator = entries.get(key);
+        if (operator != null) {
+            ReportMetrics.count("glyph_cache_hits_total");
+        } else {
+            ReportMetrics.count("glyph_cache_misses_total");
+            operator = encode(font, text);
+            entries.put(key, operator);
+        }
+        content.appendRawCommands(operator);
+    }
+
+    /**
+     * Width in points at {@code fontSize}, same value as {@code font.getStringWidth}. Meant for
+     * single words, spaces and characters: widths add up (PDFBox applies no kerning), so
+     * callers sum them for a line instead of measuring every candidate line.
+     */
+    public float width(PDFont font, float fontSize, String text) throws IOException {
+        Key key = new Key(font, text);
+        Float width = widths.get(key);
+        if (width == null) {
+            width = font.getStringWidth(text);
+            widths.put(key, width);
+        }
+        return width / 1000f * fontSize;
+    }
+
+    public int size() {
+        return entries.size();
+    }
+
+    private static byte[] encode(PDFont font, String text) throws IOException {
+        if (font.willBeSubset()) {
+            int offset = 0;
+            while (offset < text.length()) {
+                int codePoint = text.codePointAt(offset);
+                font.addToSubset(codePoint);
+                offset += Character.charCount(codePoint);
+            }
+        }
+
+        ByteArrayOutputStream out = new ByteArrayOutputStream(text.length() * 2 + 8);
+        COSWriter.writeString(font.encode(text), out);
+        out.write(TJ);
+        return out.toByteArray();
+    }
+
+    private static final class Key {
+        private final PDFont font;
+        private final String text;
+        private final int hash;
+
+        Key(PDFont font, String text) {
+            this.font = font;
+            this.text = text;
+            this.hash = 31 * System.identityHashCode(font) + text.hashCode();
+        }
+
+        @Override
+        public boolean equals(Object o) {
+            if (!(o instanceof Key)) return false;
+            Key other = (Key) o;
+            return font == other.font && text.equals(other.text);
+        }
+
+        @Override
+        public int hashCode() {
+            return hash;
+        }
+    }
+}
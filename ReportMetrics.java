@@ -0,0 +1,364 @@
+package org.example;
+
+import com.sun.net.httpserver.HttpServer;
+import jdk.jfr.Category;
+import jdk.jfr.Description;
+import jdk.jfr.Event;
+import jdk.jfr.EventType;
+import jdk.jfr.FlightRecorder;
+import jdk.jfr.Label;
+import jdk.jfr.Name;
+import jdk.jfr.StackTrace;
+
+import java.io.IOException;
+import java.io.OutputStream;
+import java.net.InetSocketAddress;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.Paths;
+import java.nio.file.StandardCopyOption;
+import java.util.Locale;
+import java.util.Map;
+import java.util.TreeMap;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.Executors;
+import java.util.concurrent.atomic.DoubleAdder;
+import java.util.concurrent.atomic.LongAccumulator;
+import java.util.concurrent.atomic.LongAdder;
+
+/**
+ * Phase timing for the report exporters.
+ *
+ * Every phase (token fetch, query, result paging, grouping, wrapping, drawing, save)
+ * is emitted as an {@code org.example.ReportPhase} JFR event and, when
+ * {@code -Dreport.metrics=true} / {@code REPORT_METRICS=true} is set, also recorded
+ * in an in-process registry of counters, timers and histograms.
+ *
+ * With metrics off and no flight recording running, {@link #phase(String)} hands back
+ * a shared no-op and the counter/histogram calls return straight away. The JFR event
+ * class is not even loaded then: registering an {@code Event} subclass costs a few hundred
+ * milliseconds on first use, which a scheduled CLI run should not pay for nothing.
+ */
+public final class ReportMetrics {
+
+    // ─────────────────────────────────────────────────────────────────────────────
+    //  CONFIG
+    // ─────────────────────────────────────────────────────────────────────────────
+    static final boolean ENABLED = Boolean.parseBoolean(
+            System.getProperty("report.metrics", System.getenv().getOrDefault("REPORT_METRICS", "false")));
+    static final String PORT_ENV = "REPORT_METRICS_PORT";
+    static final String TEXTFILE_ENV = "REPORT_METRICS_TEXTFILE";
+    static final String LINGER_ENV = "REPORT_METRICS_LINGER_SECONDS";
+    static final String PREFIX   = "bq_report_";
+
+    // rows/sec and pages/sec span several orders of magnitude; bytes go up to ~100 MB
+    private static final double[] RATE_BUCKETS  = {1, 10, 100, 1_000, 10_000, 100_000, 1_000_000};
+    private static final double[] BYTES_BUCKETS = {10_000, 100_000, 1_000_000, 10_000_000, 100_000_000};
+
+    private static final Map<String, LongAdder> COUNTERS   = new ConcurrentHashMap<>();
+    private static final Map<String, Timer>     TIMERS     = new ConcurrentHashMap<>();
+    private static final Map<String, Histogram> HISTOGRAMS = new ConcurrentHashMap<>();
+
+    private ReportMetrics() {
+    }
+
+    // ─────────────────────────────────────────────────────────────────────────────
+    //  RECORDING
+    // ─────────────────────────────────────────────────────────────────────────────
+
+    /** Starts timing a phase; close it (try-with-resources) when the phase ends. */
+    public static Phase phase(String name) {
+        boolean jfr = FlightRecorder.isInitialized() && Jfr.PHASE_EVENT_TYPE.isEnabled();
+        if (!ENABLED && !jfr) return Phase.NOOP;
+        return new Phase(name, jfr);
+    }
+
+    public static void count(String name) {
+        count(name, 1);
+    }
+
+    public static void count(String name, long delta) {
+        if (!ENABLED) return;
+        COUNTERS.computeIfAbsent(name, k -> new LongAdder()).add(delta);
+    }
+
+    /** Records rows/sec, pages/sec and bytes written for one finished run. */
+    public static void observeRun(long rows, int pdfPages, long bytesWritten, long elapsedNanos) {
+        if (!ENABLED) return;
+        double seconds = Math.max(elapsedNanos, 1) / 1e9;
+        histogram("rows_per_second", RATE_BUCKETS).observe(rows / seconds);
+        histogram("pages_per_second", RATE_BUCKETS).observe(pdfPages / seconds);
+        histogram("bytes_written", BYTES_BUCKETS).observe(bytesWritten);
+        count("runs_total");
+    }
+
+    private static Histogram histogram(String name, double[] buckets) {
+        return HISTOGRAMS.computeIfAbsent(name, k -> new Histogram(buckets));
+    }
+
+    // ─────────────────────────────────────────────────────────────────────────────
+    //  EXPORT
+    // ─────────────────────────────────────────────────────────────────────────────
+
+    /** Registry contents in the Prometheus text exposition format (0.0.4). */
+    public static String prometheus() {
+        StringBuilder sb = new StringBuilder();
+
+        for (Map.Entry<String, LongAdder> e : new TreeMap<>(COUNTERS).entrySet()) {
+            String name = PREFIX + e.getKey();
+            sb.append("# TYPE ").append(name).append(" counter\n");
+            sb.append(name).append(' ').append(e.getValue().sum()).append('\n');
+        }
+
+        if (!TIMERS.isEmpty()) {
+            String name = PREFIX + "phase_seconds";
+            sb.append("# TYPE ").append(name).append(" summary\n");
+            for (Map.Entry<String, Timer> e : new TreeMap<>(TIMERS).entrySet()) {
+                String label = "{phase=\"" + e.getKey() + "\"}";
+                Timer t = e.getValue();
+                sb.append(name).append("_count").append(label).append(' ').append(t.count.sum()).append('\n');
+                sb.append(name).append("_sum").append(label).append(' ').append(seconds(t.totalNanos.sum())).append('\n');
+            }
+            String max = PREFIX + "phase_max_seconds";
+            sb.append("# TYPE ").append(max).append(" gauge\n");
+            for (Map.Entry<String, Timer> e : new TreeMap<>(TIMERS).entrySet()) {
+                sb.append(max).append("{phase=\"").append(e.getKey()).append("\"} ")
+                  .append(seconds(e.getValue().maxNanos.get())).append('\n');
+            }
+        }
+
+        for (Map.Entry<String, Histogram> e : new TreeMap<>(HISTOGRAMS).entrySet()) {
+            String name = PREFIX + e.getKey();
+            Histogram h = e.getValue();
+            sb.append("# TYPE ").append(name).append(" histogram\n");
+            long cumulative = 0;
+            for (int i = 0; i < h.bounds.length; i++) {
+                cumulative += h.buckets[i].sum();
+                sb.append(name).append("_bucket{le=\"").append(format(h.bounds[i])).append("\"} ")
+                  .append(cumulative).append('\n');
+            }
+            sb.append(name).append("_bucket{le=\"+Inf\"} ").append(h.count.sum()).append('\n');
+            sb.append(name).append("_sum ").append(format(h.sum.sum())).append('\n');
+            sb.append(name).append("_count ").append(h.count.sum()).append('\n');
+        }
+        return sb.toString();
+    }
+
+    /** One-line summary for CLI runs, e.g. {@code metrics: query=1.204s draw=0.310s ... rows=100}. */
+    public static String summary() {
+        StringBuilder sb = new StringBuilder("metrics:");
+        for (Map.Entry<String, Timer> e : new TreeMap<>(TIMERS).entrySet()) {
+            sb.append(' ').append(e.getKey()).append('=')
+              .append(String.format(Locale.ROOT, "%.3fs", e.getValue().totalNanos.sum() / 1e9));
+        }
+        for (Map.Entry<String, LongAdder> e : new TreeMap<>(COUNTERS).entrySet()) {
+            sb.append(' ').append(e.getKey()).append('=').append(e.getValue().sum());
+        }
+        for (Map.Entry<String, Histogram> e : new TreeMap<>(HISTOGRAMS).entrySet()) {
+            Histogram h = e.getValue();
+            long n = h.count.sum();
+            sb.append(' ').append(e.getKey()).append('=')
+              .append(String.format(Locale.ROOT, "%.1f", n == 0 ? 0 : h.sum.sum() / n));
+        }
+        return sb.toString();
+    }
+
+    /**
+     * Export for one CLI run; close it when the run ends.
+     *
+     * When {@code REPORT_METRICS_PORT} is set, {@link #prometheus()} is served on {@code /metrics}
+     * while the run is in progress. A scrape rarely lands inside a run, so the final values are
+     * exported on close: {@code REPORT_METRICS_TEXTFILE} names a file for node_exporter's
+     * textfile collector, and {@code REPORT_METRICS_LINGER_SECONDS} keeps the endpoint up that
+     * long after the run so the next scrape sees it. There is no long-lived service mode, so a
+     * scheduled run still exits. With metrics off the endpoint is a no-op.
+     */
+    public static Endpoint startEndpoint() throws IOException {
+        if (!ENABLED) return new Endpoint(null, null, 0);
+        String textfile = System.getenv(TEXTFILE_ENV);
+        String linger = System.getenv(LINGER_ENV);
+        Path textfilePath = textfile == null || textfile.isBlank() ? null : Paths.get(textfile.trim());
+        long lingerSeconds = linger == null || linger.isBlank() ? 0 : Long.parseLong(linger.trim());
+
+        String port = System.getenv(PORT_ENV);
+        if (port == null || port.isBlank()) return new Endpoint(null, textfilePath, 0);
+
+        HttpServer server = HttpServer.create(new InetSocketAddress(Integer.parseInt(port.trim())), 0);
+        server.createContext("/metrics", exchange -> {
+            byte[] body = prometheus().getBytes(StandardCharsets.UTF_8);
+            exchange.getResponseHeaders().set("Content-Type", "text/plain; version=0.0.4; charset=utf-8");
+            exchange.sendResponseHeaders(200, body.length);
+            try (OutputStream out = exchange.getResponseBody()) {
+                out.write(body);
+            }
+        });
+        server.setExecutor(Executors.newSingleThreadExecutor(r -> {
+            Thread t = new Thread(r, "report-metrics");
+            t.setDaemon(true);
+            return t;
+        }));
+        server.start();
+        return new Endpoint(server, textfilePath, lingerSeconds);
+    }
+
+    /**
+     * Writes {@link #prometheus()} to {@code file} via a temp file and rename, so the textfile
+     * collector never reads a half-written file.
+     */
+    static void writeTextfile(Path file) throws IOException {
+        Path dir = file.toAbsolutePath().getParent();
+        Files.createDirectories(dir);
+        Path tmp = Files.createTempFile(dir, file.getFileName().toString(), ".tmp");
+        try {
+            Files.write(tmp, prometheus().getBytes(StandardCharsets.UTF_8));
+            Files.move(tmp, file, StandardCopyOption.REPLACE_EXISTING, StandardCopyOption.ATOMIC_MOVE);
+        } finally {
+            Files.deleteIfExists(tmp);
+        }
+    }
+
+    /** Prints the CLI summary line when metrics are on. */
+    public static void printSummary() {
+        if (ENABLED) System.out.println(summary());
+    }
+
+    static void reset() {
+        COUNTERS.clear();
+        TIMERS.clear();
+        HISTOGRAMS.clear();
+    }
+
+    private static String seconds(long nanos) {
+        return format(nanos / 1e9);
+    }
+
+    private static String format(double v) {
+        return v == Math.rint(v) && !Double.isInfinite(v) ? Long.toString((long) v) : Double.toString(v);
+    }
+
+    // ─────────────────────────────────────────────────────────────────────────────
+    //  TYPES
+    // ─────────────────────────────────────────────────────────────────────────────
+
+    public static final class Phase implements AutoCloseable {
+        static final Phase NOOP = new Phase();
+
+        private final String name;
+        private final long startNanos;
+        private final PhaseEvent event;
+
+        private Phase() {
+            this.name = null;
+            this.startNanos = 0;
+            this.event = null;
+        }
+
+        private Phase(String name, boolean jfr) {
+            this.name = name;
+            this.event = jfr ? Jfr.begin() : null;
+            this.startNanos = System.nanoTime();
+        }
+
+        @Override
+        public void close() {
+            if (name == null) return;
+            long elapsed = System.nanoTime() - startNanos;
+            if (ENABLED) TIMERS.computeIfAbsent(name, k -> new Timer()).record(elapsed);
+            if (event != null) Jfr.end(event, name);
+        }
+    }
+
+    /** Holder so {@link PhaseEvent} is only loaded once a flight recorder is up. */
+    private static final class Jfr {
+        static final EventType PHASE_EVENT_TYPE = EventType.getEventType(PhaseEvent.class);
+
+        static PhaseEvent begin() {
+            PhaseEvent event = new PhaseEvent();
+            event.begin();
+            return event;
+        }
+
+        static void end(PhaseEvent event, String name) {
+            event.end();
+            if (event.shouldCommit()) {
+                event.phase = name;
+                event.commit();
+            }
+        }
+    }
+
+    /** Handle for one run's export; closing it writes the final values and stops the server. */
+    public static final class Endpoint implements AutoCloseable {
+        private final HttpServer server;
+        private final Path textfile;
+        private final long lingerSeconds;
+
+        private Endpoint(HttpServer server, Path textfile, long lingerSeconds) {
+            this.server = server;
+            this.textfile = textfile;
+            this.lingerSeconds = lingerSeconds;
+        }
+
+        @Override
+        public void close() throws IOException {
+            try {
+                if (textfile != null) writeTextfile(textfile);
+                if (server != null && lingerSeconds > 0) {
+                    System.out.println("metrics: serving final values on /metrics for " + lingerSeconds + "s");
+                    Thread.sleep(lingerSeconds * 1000);
+                }
+            } catch (InterruptedException e) {
+                Thread.currentThread().interrupt();
+            } finally {
+                if (server != null) server.stop(0);
+            }
+        }
+    }
+
+    @Name("org.example.ReportPhase")
+    @Label("Report Phase")
+    @Description("One phase of a BigQuery PDF report run")
+    @Category({"BigQuery Report"})
+    @StackTrace(false)
+    static final class PhaseEvent extends Event {
+        @Label("Phase")
+        String phase;
+    }
+
+    private static final class Timer {
+        final LongAdder count = new LongAdder();
+        final LongAdder totalNanos = new LongAdder();
+        final LongAccumulator maxNanos = new LongAccumulator(Math::max, 0);
+
+        void record(long nanos) {
+            count.increment();
+            totalNanos.add(nanos);
+            maxNanos.accumulate(nanos);
+        }
+    }
+
+    private static final class Histogram {
+        final double[] bounds;
+        final LongAdder[] buckets;
+        final LongAdder count = new LongAdder();
+        final DoubleAdder sum = new DoubleAdder();
+
+        Histogram(double[] bounds) {
+            this.bounds = bounds;
+            this.buckets = new LongAdder[bounds.length];
+            for (int i = 0; i < bounds.length; i++) buckets[i] = new LongAdder();
+        }
+
+        void observe(double value) {
+            count.increment();
+            sum.add(value);
+            for (int i = 0; i < bounds.length; i++) {
+                if (value <= bounds[i]) {
+                    buckets[i].increment();
+                    return;
+                }
+            }
+        }
+    }
+}
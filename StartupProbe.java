@@ -0,0 +1,128 @@
+package org.example;
+
+import com.google.cloud.bigquery.BigQuery;
+import com.sun.net.httpserver.HttpExchange;
+import com.sun.net.httpserver.HttpServer;
+
+import java.io.IOException;
+import java.io.InputStream;
+import java.io.OutputStream;
+import java.io.StringReader;
+import java.net.InetAddress;
+import java.net.InetSocketAddress;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.Paths;
+import java.util.HashMap;
+import java.util.Map;
+import java.util.concurrent.atomic.AtomicInteger;
+
+/**
+ * One offline run of the {@code new} report's production path, for AppCDS training and the
+ * startup benchmark.
+ *
+ * Unlike the load test's in-process fake, this builds the real client the way
+ * {@link BigQueryWIFPDFBoxNew#main} does: token JSON parsed with Jackson, static
+ * {@code GoogleCredentials}, {@code BigQueryOptions}, the google-http-client transport and gax
+ * retry settings. The only difference is the host, a loopback stub that answers
+ * {@code jobs.query} with a canned REST response, so the BigQuery JSON model classes are
+ * parsed by reflection exactly as against the real API. The rest of the run (YAML widths,
+ * auto layout, grouping, PDFBox render and save) is the report's own code.
+ *
+ * Nothing leaves the machine: no mTLS token fetch (that needs PEM files) and no Google host.
+ *
+ * <pre>
+ *   java -cp target/bigquery-wif-pdf-report.jar org.example.StartupProbe [rows]
+ * </pre>
+ */
+public final class StartupProbe {
+
+    private static final String PROJECT  = "startup-probe";
+    private static final String LOCATION = "asia-northeast1";
+    private static final String[] EXCHANGES = {"TSE", "OSE", "NSE", "FSE"};
+    private static final String[] STATUSES  = {"NEW", "PARTIALLY_FILLED", "FILLED", "CANCELLED"};
+
+    private StartupProbe() {
+    }
+
+    public static void main(String[] args) throws Exception {
+        int rows = args.length > 0 ? Integer.parseInt(args[0]) : 200;
+        long start = System.nanoTime();
+
+        HttpServer stub = HttpServer.create(new InetSocketAddress(InetAddress.getLoopbackAddress(), 0), 0);
+        AtomicInteger requests = new AtomicInteger();
+        byte[] response = queryResponse(rows).getBytes(StandardCharsets.UTF_8);
+        stub.createContext("/", exchange -> answer(exchange, response, requests));
+        stub.start();
+
+        Path output = Files.createTempFile("startup-probe", ".pdf");
+        try {
+            String token = BigQueryWIFPDFBoxNew.readAccessToken(
+                    new StringReader("{\"access_token\":\"probe-token\",\"token_type\":\"Bearer\",\"expires_in\":3600}"));
+
+            BigQuery bigquery = BigQueryWIFPDFBoxNew.clientOptions(token, PROJECT, LOCATION)
+                    .setHost("http://" + stub.getAddress().getHostString() + ":" + stub.getAddress().getPort())
+                    .build()
+                    .getService();
+
+            Path config = Paths.get("config.yaml");
+            Map<String, Integer> colWidths = Files.exists(config)
+                    ? BigQueryWIFPDFBoxNew.loadColumnWidths(config.toString())
+                    : new HashMap<>();
+
+            BigQueryWIFPDFBoxNew.exportReport(bigquery, colWidths, ColumnLayout.inMemory(), output);
+            System.out.printf("startup probe: %d rows, %d bytes, %d request(s), %d ms%n",
+                    rows, Files.size(output), requests.get(), (System.nanoTime() - start) / 1_000_000);
+        } finally {
+            stub.stop(0);
+            Files.deleteIfExists(output);
+        }
+    }
+
+    private static void answer(HttpExchange exchange, byte[] response, AtomicInteger requests) throws IOException {
+        requests.incrementAndGet();
+        try (InputStream in = exchange.getRequestBody()) {
+            in.readAllBytes();
+        }
+        boolean query = "POST".equals(exchange.getRequestMethod())
+                && exchange.getRequestURI().getPath().endsWith("/projects/" + PROJECT + "/queries");
+        byte[] body = query ? response
+                : ("{\"error\":{\"code\":404,\"message\":\"startup probe: unexpected "
+                   + exchange.getRequestMethod() + " " + exchange.getRequestURI().getPath() + "\"}}")
+                        .getBytes(StandardCharsets.UTF_8);
+        exchange.getResponseHeaders().set("Content-Type", "application/json; charset=UTF-8");
+        exchange.sendResponseHeaders(query ? 200 : 404, body.length);
+        try (OutputStream out = exchange.getResponseBody()) {
+            out.write(body);
+        }
+    }
+
+    /** A complete, single-page {@code QueryResponse} for the report's four STRING columns. */
+    static String queryResponse(int rows) {
+        StringBuilder sb = new StringBuilder(256 + rows * 96);
+        sb.append("{\"kind\":\"bigquery#queryResponse\",")
+          .append("\"schema\":{\"fields\":[");
+        String[] columns = {"client_order_id", "exchange", "trader", "status"};
+        for (int c = 0; c < columns.length; c++) {
+            if (c > 0) sb.append(',');
+            sb.append("{\"name\":\"").append(columns[c]).append("\",\"type\":\"STRING\",\"mode\":\"NULLABLE\"}");
+        }
+        sb.append("]},")
+          .append("\"jobReference\":{\"projectId\":\"").append(PROJECT)
+          .append("\",\"jobId\":\"startup-probe-job\",\"location\":\"").append(LOCATION).append("\"},")
+          .append("\"totalRows\":\"").append(rows).append("\",")
+          .append("\"rows\":[");
+        for (int r = 0; r < rows; r++) {
+            if (r > 0) sb.append(',');
+            sb.append("{\"f\":[")
+              .append("{\"v\":\"CO-").append(100_000 + r).append("\"},")
+              .append("{\"v\":\"").append(EXCHANGES[r % EXCHANGES.length]).append("\"},")
+              .append("{\"v\":\"trader").append(r % 17).append("\"},")
+              .append("{\"v\":\"").append(STATUSES[r % STATUSES.length]).append("\"}")
+              .append("]}");
+        }
+        sb.append("],\"jobComplete\":true,\"cacheHit\":false}");
+        return sb.toString();
+    }
+}
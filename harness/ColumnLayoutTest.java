@@ -0,0 +1,151 @@
+package org.example;
+
+import com.google.cloud.bigquery.Field;
+import com.google.cloud.bigquery.FieldList;
+import com.google.cloud.bigquery.FieldValue;
+import com.google.cloud.bigquery.FieldValueList;
+import com.google.cloud.bigquery.StandardSQLTypeName;
+import org.apache.pdfbox.pdmodel.font.PDFont;
+import org.apache.pdfbox.pdmodel.font.PDType1Font;
+import org.junit.jupiter.api.Test;
+import org.junit.jupiter.api.io.TempDir;
+
+import java.io.IOException;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.List;
+import java.util.Map;
+
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertNotEquals;
+import static org.junit.jupiter.api.Assertions.assertNotNull;
+import static org.junit.jupiter.api.Assertions.assertNull;
+import static org.junit.jupiter.api.Assertions.assertTrue;
+
+class ColumnLayoutTest {
+
+    private static final PDFont FONT = PDType1Font.HELVETICA;
+    private static final float FONT_SIZE = 8f;
+    private static final float PADDING = 4f;
+
+    @TempDir
+    Path dir;
+
+    @Test
+    void samplerKeepsAUniformReservoir() {
+        FieldList fields = schema("id");
+        ColumnLayout.Sampler sampler = new ColumnLayout.Sampler(Arrays.asList("id"), 512);
+        for (int i = 0; i < 10_000; i++) sampler.add(row(fields, Integer.toString(i)));
+
+        assertEquals(10_000, sampler.seen());
+        assertEquals(512, sampler.rows.size());
+        // A uniform sample holds about half its rows from the second half of the stream
+        long late = sampler.rows.stream().filter(r -> Integer.parseInt(r[0]) >= 5_000).count();
+        assertTrue(late > 200 && late < 312, "late rows in sample: " + late);
+    }
+
+    @Test
+    void samplerReadsNullsAsEmpty() {
+        FieldList fields = schema("a", "b");
+        ColumnLayout.Sampler sampler = new ColumnLayout.Sampler(Arrays.asList("a", "b"), 4);
+        sampler.add(row(fields, "x", null));
+        assertEquals(Arrays.asList("x", ""), Arrays.asList(sampler.rows.get(0)));
+    }
+
+    @Test
+    void solverWidensTheColumnWithLongValues() throws IOException {
+        ColumnLayout.Sampler sampler = sampler(new String[]{"a", "b"}, 50,
+                r -> new String[]{"ok", "a fairly long free text comment number " + r});
+
+        Map<String, Integer> widths = ColumnLayout.solve(sampler, FONT, FONT, FONT_SIZE, PADDING, 400);
+
+        assertTrue(widths.get("b") > widths.get("a"), widths.toString());
+        assertEquals(ColumnLayout.MIN_WIDTH, widths.get("a"), 0.0f);
+        assertTrue(widths.get("a") + widths.get("b") <= 400, widths.toString());
+    }
+
+    @Test
+    void solverStopsWhenEverythingFitsOnOneLine() throws IOException {
+        ColumnLayout.Sampler sampler = sampler(new String[]{"a", "b"}, 20, r -> new String[]{"x", "y"});
+
+        Map<String, Integer> widths = ColumnLayout.solve(sampler, FONT, FONT, FONT_SIZE, PADDING, 1000);
+
+        assertEquals((int) ColumnLayout.MIN_WIDTH, widths.get("a"));
+        assertEquals((int) ColumnLayout.MIN_WIDTH, widths.get("b"));
+    }
+
+    @Test
+    void solverScalesHeadersDownWhenTheyDoNotFit() throws IOException {
+        String[] columns = new String[12];
+        for (int c = 0; c < columns.length; c++) columns[c] = "a_rather_long_column_header_" + c;
+        ColumnLayout.Sampler sampler = sampler(columns, 5, r -> {
+            String[] values = new String[columns.length];
+            Arrays.fill(values, "v");
+            return values;
+        });
+
+        Map<String, Integer> widths = ColumnLayout.solve(sampler, FONT, FONT, FONT_SIZE, PADDING, 300);
+
+        int total = widths.values().stream().mapToInt(Integer::intValue).sum();
+        assertTrue(total <= 300, "total " + total);
+        for (int w : widths.values()) assertTrue(w >= PADDING, widths.toString());
+    }
+
+    @Test
+    void yamlCacheRoundTrips() throws IOException {
+        Path cache = dir.resolve("cache/layout-cache.yaml");
+        Path config = dir.resolve("config.yaml");
+        Files.writeString(config, "autoLayout: true\nlayoutCache: " + cache + "\n");
+        FieldList fields = schema("a", "b");
+
+        ColumnLayout.fromConfig(config.toString()).store("new", fields, Map.of("a", 40, "b", 120));
+        assertTrue(Files.exists(cache));
+
+        ColumnLayout reloaded = ColumnLayout.fromConfig(config.toString());
+        assertEquals(Map.of("a", 40, "b", 120), reloaded.cached("new", fields));
+        assertNull(reloaded.cached("jp", fields));
+        assertNull(reloaded.cached("new", schema("a", "b", "c")));
+    }
+
+    @Test
+    void autoLayoutOffMeansNoLayout() throws IOException {
+        Path config = dir.resolve("config.yaml");
+        Files.writeString(config, "columnWidths:\n  a: 60\n");
+        assertNull(ColumnLayout.fromConfig(config.toString()));
+
+        Files.writeString(config, "autoLayout: true\n");
+        assertNotNull(ColumnLayout.fromConfig(config.toString()));
+    }
+
+    @Test
+    void cacheKeyTracksSchema() {
+        assertEquals(ColumnLayout.cacheKey("new", schema("a", "b")), ColumnLayout.cacheKey("new", schema("a", "b")));
+        assertNotEquals(ColumnLayout.cacheKey("new", schema("a", "b")), ColumnLayout.cacheKey("new", schema("b", "a")));
+        assertNotEquals(ColumnLayout.cacheKey("new", schema("a")), ColumnLayout.cacheKey("jp", schema("a")));
+    }
+
+    private interface RowSource {
+        String[] values(int row);
+    }
+
+    private static ColumnLayout.Sampler sampler(String[] columns, int rows, RowSource source) {
+        ColumnLayout.Sampler sampler = new ColumnLayout.Sampler(Arrays.asList(columns), ColumnLayout.SAMPLE_ROWS);
+        FieldList fields = schema(columns);
+        for (int r = 0; r < rows; r++) sampler.add(row(fields, source.values(r)));
+        return sampler;
+    }
+
+    private static FieldList schema(String... columns) {
+        List<Field> fields = new ArrayList<>();
+        for (String column : columns) fields.add(Field.of(column, StandardSQLTypeName.STRING));
+        return FieldList.of(fields);
+    }
+
+    private static FieldValueList row(FieldList fields, String... values) {
+        List<FieldValue> cells = new ArrayList<>();
+        for (String value : values) cells.add(FieldValue.of(FieldValue.Attribute.PRIMITIVE, value));
+        return FieldValueList.of(cells, fields);
+    }
+}
@@ -0,0 +1,121 @@
+package org.example;
+
+import org.apache.pdfbox.pdmodel.PDDocument;
+import org.apache.pdfbox.pdmodel.PDPage;
+import org.apache.pdfbox.pdmodel.PDPageContentStream;
+import org.apache.pdfbox.pdmodel.font.PDFont;
+import org.apache.pdfbox.pdmodel.font.PDType0Font;
+import org.apache.pdfbox.pdmodel.font.PDType1Font;
+import org.apache.pdfbox.text.PDFTextStripper;
+import org.junit.jupiter.api.Test;
+
+import java.io.ByteArrayOutputStream;
+import java.io.IOException;
+import java.io.InputStream;
+import java.util.Arrays;
+import java.util.List;
+
+import static org.junit.jupiter.api.Assertions.assertArrayEquals;
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertTrue;
+
+/**
+ * {@link EncodedTextCache#showText} must write exactly what {@code PDPageContentStream.showText}
+ * writes, for simple (Type1) and composite (Type0, subset) fonts, on both the miss and the hit path.
+ */
+class EncodedTextCacheTest {
+
+    private static final String TTF = "/org/apache/pdfbox/resources/ttf/LiberationSans-Regular.ttf";
+
+    // escaping (parens, backslash) and non-ASCII WinAnsi characters; the repeat exercises the hit path
+    private static final List<String> TEXTS = Arrays.asList(
+            "FILLED", "a (b) \\ c", "Café – naïve", "", "FILLED");
+
+    private interface FontLoader {
+        PDFont load(PDDocument doc) throws IOException;
+    }
+
+    @Test
+    void type1MatchesShowText() throws IOException {
+        assertSameContent(doc -> PDType1Font.HELVETICA);
+    }
+
+    @Test
+    void type0MatchesShowText() throws IOException {
+        assertSameContent(EncodedTextCacheTest::liberationSans);
+    }
+
+    @Test
+    void widthMatchesFont() throws IOException {
+        try (PDDocument doc = new PDDocument()) {
+            PDFont font = liberationSans(doc);
+            EncodedTextCache cache = new EncodedTextCache(16);
+            for (String text : TEXTS) {
+                assertEquals(font.getStringWidth(text) / 1000f * 9, cache.width(font, 9, text), 1e-4f);
+            }
+        }
+    }
+
+    @Test
+    void widthsDoNotTakeOperatorSlots() throws IOException {
+        EncodedTextCache cache = new EncodedTextCache(16);
+        for (int i = 0; i < 100; i++) cache.width(PDType1Font.HELVETICA, 9, "word" + i);
+        assertEquals(0, cache.size());
+    }
+
+    @Test
+    void cachedType0TextSurvivesSubsetting() throws IOException {
+        ByteArrayOutputStream pdf = new ByteArrayOutputStream();
+        try (PDDocument doc = new PDDocument()) {
+            PDFont font = liberationSans(doc);
+            EncodedTextCache cache = new EncodedTextCache(16);
+            PDPage page = new PDPage();
+            doc.addPage(page);
+            try (PDPageContentStream content = new PDPageContentStream(doc, page)) {
+                content.beginText();
+                content.setFont(font, 10);
+                content.newLineAtOffset(50, 700);
+                cache.showText(content, font, "Café – naïve");
+                content.endText();
+            }
+            doc.save(pdf);
+        }
+        try (PDDocument doc = PDDocument.load(pdf.toByteArray())) {
+            assertTrue(new PDFTextStripper().getText(doc).contains("Café – naïve"));
+        }
+    }
+
+    private static void assertSameContent(FontLoader loader) throws IOException {
+        byte[] expected = render(loader, null);
+        byte[] actual = render(loader, new EncodedTextCache(16));
+        assertArrayEquals(expected, actual);
+    }
+
+    /** Uncompressed page content with every text drawn by showText, or by the cache when given. */
+    private static byte[] render(FontLoader loader, EncodedTextCache cache) throws IOException {
+        try (PDDocument doc = new PDDocument()) {
+            PDFont font = loader.load(doc);
+            PDPage page = new PDPage();
+            doc.addPage(page);
+            try (PDPageContentStream content =
+                         new PDPageContentStream(doc, page, PDPageContentStream.AppendMode.OVERWRITE, false)) {
+                content.beginText();
+                content.setFont(font, 10);
+                for (String text : TEXTS) {
+                    if (cache == null) content.showText(text);
+                    else cache.showText(content, font, text);
+                }
+                content.endText();
+            }
+            try (InputStream in = page.getContents()) {
+                return in.readAllBytes();
+            }
+        }
+    }
+
+    private static PDFont liberationSans(PDDocument doc) throws IOException {
+        try (InputStream in = PDDocument.class.getResourceAsStream(TTF)) {
+            return PDType0Font.load(doc, in);
+        }
+    }
+}
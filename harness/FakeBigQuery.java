@@ -0,0 +1,249 @@
+package org.example;
+
+import com.google.api.gax.paging.Page;
+import com.google.cloud.bigquery.BigQuery;
+import com.google.cloud.bigquery.Field;
+import com.google.cloud.bigquery.FieldList;
+import com.google.cloud.bigquery.FieldValue;
+import com.google.cloud.bigquery.FieldValueList;
+import com.google.cloud.bigquery.LegacySQLTypeName;
+import com.google.cloud.bigquery.QueryJobConfiguration;
+import com.google.cloud.bigquery.Schema;
+import com.google.cloud.bigquery.TableResult;
+
+import java.lang.reflect.InvocationHandler;
+import java.lang.reflect.Method;
+import java.lang.reflect.Proxy;
+import java.util.ArrayList;
+import java.util.Iterator;
+import java.util.List;
+import java.util.Locale;
+import java.util.NoSuchElementException;
+import java.util.Random;
+
+/**
+ * In-process {@link BigQuery} that answers {@code query(...)} with synthetic rows.
+ *
+ * The schema is taken from the SELECT list of the submitted query (every column is a
+ * STRING), so both report classes get exactly the columns they ask for. Rows are
+ * generated page by page, deterministically, and each page fetch sleeps for the
+ * profile's paging latency. {@code LIMIT} is ignored so the profile decides the volume.
+ * Every other {@link BigQuery} method throws {@link UnsupportedOperationException}.
+ */
+public final class FakeBigQuery implements InvocationHandler {
+
+    private static final String[] EXCHANGES   = {"TSE", "OSE", "NSE", "FSE", "SPSE", "JNX", "CHIX"};
+    private static final String[] STATUSES    = {"NEW", "PARTIALLY_FILLED", "FILLED", "CANCELED", "REJECTED"};
+    private static final String[] VENUES      = {"XTKS", "XOSE", "XNGO", "XFKA", "XSAP", "JASR", "CHIJ"};
+    private static final String[] TRADERS     = {"Sato", "Suzuki", "Takahashi", "Tanaka", "Watanabe", "Ito"};
+    private static final String[] TRADERS_JP  = {"佐藤 太郎", "鈴木 花子", "高橋 健", "田中 美咲", "渡辺 翔", "伊藤 さくら"};
+    private static final String LATIN_WORDS   = "order fill limit market cancel amend route venue client desk algo block";
+    private static final String JAPANESE_CHARS =
+            "注文約定取消訂正指値成行数量価格銘柄市場顧客執行戦略東京大阪証券取引所部分全量未決済"
+            + "あいうえおかきくけこさしすせそたちつてとなにぬねのアイウエオカキクケコ、。";
+
+    /** Shape of the synthetic result. */
+    public static final class Profile {
+        final String name;
+        final int rows;
+        final int valueLength;
+        final boolean japanese;
+        final int pageSize;
+        final long pageLatencyMillis;
+
+        public Profile(String name, int rows, int valueLength, boolean japanese, int pageSize, long pageLatencyMillis) {
+            if (rows < 0 || valueLength < 1 || pageSize < 1 || pageLatencyMillis < 0) {
+                throw new IllegalArgumentException("Invalid load profile: " + name);
+            }
+            this.name = name;
+            this.rows = rows;
+            this.valueLength = valueLength;
+            this.japanese = japanese;
+            this.pageSize = pageSize;
+            this.pageLatencyMillis = pageLatencyMillis;
+        }
+
+        @Override
+        public String toString() {
+            return String.format(Locale.ROOT, "%s(rows=%d, len=%d, jp=%s, page=%d, latency=%dms)",
+                    name, rows, valueLength, japanese, pageSize, pageLatencyMillis);
+        }
+    }
+
+    private final Profile profile;
+
+    private FakeBigQuery(Profile profile) {
+        this.profile = profile;
+    }
+
+    public static BigQuery create(Profile profile) {
+        return (BigQuery) Proxy.newProxyInstance(BigQuery.class.getClassLoader(),
+                new Class<?>[]{BigQuery.class}, new FakeBigQuery(profile));
+    }
+
+    @Override
+    public Object invoke(Object proxy, Method method, Object[] args) throws Throwable {
+        switch (method.getName()) {
+            case "query":
+                return query(((QueryJobConfiguration) args[0]).getQuery());
+            case "toString":
+                return "FakeBigQuery" + profile;
+            case "hashCode":
+                return System.identityHashCode(proxy);
+            case "equals":
+                return proxy == args[0];
+            default:
+                throw new UnsupportedOperationException("FakeBigQuery does not implement " + method.getName());
+        }
+    }
+
+    // ─────────────────────────────────────────────────────────────────────────────
+    //  RESULT
+    // ─────────────────────────────────────────────────────────────────────────────
+
+    private TableResult query(String sql) throws InterruptedException {
+        Schema schema = schemaOf(sql);
+        return new TableResult(schema, profile.rows, page(schema.getFields(), 0));
+    }
+
+    static Schema schemaOf(String sql) {
+        String upper = sql.toUpperCase(Locale.ROOT);
+        int select = upper.indexOf("SELECT");
+        int from = upper.indexOf(" FROM ");
+        if (select < 0 || from < select) {
+            throw new IllegalArgumentException("Cannot derive columns from query: " + sql);
+        }
+        List<Field> fields = new ArrayList<>();
+        for (String col : sql.substring(select + "SELECT".length(), from).split(",")) {
+            fields.add(Field.of(col.trim(), LegacySQLTypeName.STRING));
+        }
+        return Schema.of(fields);
+    }
+
+    private FakePage page(FieldList fields, int index) throws InterruptedException {
+        if (profile.pageLatencyMillis > 0) Thread.sleep(profile.pageLatencyMillis);
+
+        int from = index * profile.pageSize;
+        int to = Math.min(profile.rows, from + profile.pageSize);
+        Random random = new Random(31L * index + profile.rows);
+
+        List<FieldValueList> values = new ArrayList<>(Math.max(0, to - from));
+        for (int r = from; r < to; r++) {
+            List<FieldValue> row = new ArrayList<>(fields.size());
+            for (Field field : fields) {
+                row.add(FieldValue.of(FieldValue.Attribute.PRIMITIVE, value(field.getName(), r, random)));
+            }
+            values.add(FieldValueList.of(row, fields));
+        }
+        return new FakePage(fields, index, values);
+    }
+
+    private String value(String column, int row, Random random) {
+        switch (column) {
+            case "exchange":
+                return EXCHANGES[random.nextInt(EXCHANGES.length)];
+            case "status":
+                return STATUSES[random.nextInt(STATUSES.length)];
+            case "venue":
+                return VENUES[random.nextInt(VENUES.length)];
+            case "trader":
+                String[] traders = profile.japanese ? TRADERS_JP : TRADERS;
+                return traders[random.nextInt(traders.length)];
+            case "client_order_id":
+            case "order_id":
+                return String.format(Locale.ROOT, "ORD-%010d", row);
+            case "quantity":
+                return Integer.toString(100 * (1 + random.nextInt(500)));
+            case "price":
+                return String.format(Locale.ROOT, "%.2f", 100 + random.nextDouble() * 9900);
+            case "updated_at":
+            case "timestamp":
+                return String.format(Locale.ROOT, "2024-%02d-%02d %02d:%02d:%02d",
+                        1 + random.nextInt(12), 1 + random.nextInt(28),
+                        random.nextInt(24), random.nextInt(60), random.nextInt(60));
+            default:
+                return profile.japanese ? japanese(random) : latin(random);
+        }
+    }
+
+    private String japanese(Random random) {
+        // Unspaced, like real Japanese free text
+        StringBuilder sb = new StringBuilder(profile.valueLength);
+        for (int i = 0; i < profile.valueLength; i++) {
+            sb.append(JAPANESE_CHARS.charAt(random.nextInt(JAPANESE_CHARS.length())));
+        }
+        return sb.toString();
+    }
+
+    private String latin(Random random) {
+        String[] words = LATIN_WORDS.split(" ");
+        StringBuilder sb = new StringBuilder(profile.valueLength + 16);
+        while (sb.length() < profile.valueLength) {
+            if (sb.length() > 0) sb.append(' ');
+            sb.append(words[random.nextInt(words.length)]);
+        }
+        sb.setLength(profile.valueLength);
+        return sb.toString().trim();
+    }
+
+    private final class FakePage implements Page<FieldValueList> {
+        private final FieldList fields;
+        private final int index;
+        private final List<FieldValueList> values;
+
+        FakePage(FieldList fields, int index, List<FieldValueList> values) {
+            this.fields = fields;
+            this.index = index;
+            this.values = values;
+        }
+
+        @Override
+        public boolean hasNextPage() {
+            return (long) (index + 1) * profile.pageSize < profile.rows;
+        }
+
+        @Override
+        public String getNextPageToken() {
+            return hasNextPage() ? Integer.toString(index + 1) : null;
+        }
+
+        @Override
+        public FakePage getNextPage() {
+            if (!hasNextPage()) return null;
+            try {
+                return page(fields, index + 1);
+            } catch (InterruptedException e) {
+                Thread.currentThread().interrupt();
+                throw new IllegalStateException("Interrupted while fetching page " + (index + 1), e);
+            }
+        }
+
+        @Override
+        public Iterable<FieldValueList> iterateAll() {
+            return () -> new Iterator<FieldValueList>() {
+                private FakePage page = FakePage.this;
+                private Iterator<FieldValueList> it = values.iterator();
+
+                @Override
+                public boolean hasNext() {
+                    while (!it.hasNext() && page.hasNextPage()) {
+                        page = page.getNextPage();
+                        it = page.values.iterator();
+                    }
+                    return it.hasNext();
+                }
+
+                @Override
+                public FieldValueList next() {
+                    if (!hasNext()) throw new NoSuchElementException();
+                    return it.next();
+                }
+            };
+        }
+
+        @Override
+        public Iterable<FieldValueList> getValues() {
+            return values;
+        }
+    }
+}
@@ -0,0 +1,249 @@
+package org.example;
+
+import com.google.cloud.bigquery.BigQuery;
+
+import java.lang.management.ManagementFactory;
+import java.lang.management.MemoryPoolMXBean;
+import java.lang.management.MemoryType;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.Paths;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Collections;
+import java.util.HashMap;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Locale;
+import java.util.Map;
+
+/**
+ * Offline end-to-end load test: token fetch from {@link TokenStubServer}, then the
+ * report's own query/group/render/save path against {@link FakeBigQuery}.
+ *
+ * Usage (from the repo root, with the runtime classpath):
+ * <pre>
+ *   java org.example.LoadTestDriver [--target=new|jp|both] [--iterations=5] [--warmup=2]
+ *        [--config=config.yaml] [--rows=N --length=N --page-size=N --latency-ms=N --japanese]
+ *        [--no-token] [--auto-layout]
+ * </pre>
+ * Without {@code --rows} the built-in profile matrix is run. The {@code jp} target needs
+ * {@code resources/fonts/NotoSansJP-Regular.ttf} in the working directory; Japanese profiles
+ * are skipped for the {@code new} target, whose Helvetica font cannot encode them.
+ * {@code --no-token} skips the mTLS stub (it needs {@code keytool}, so not in a native image).
+ * {@code --auto-layout} sizes columns from the data ({@link ColumnLayout}, in-memory cache). Each
+ * target and profile gets its own layout, since every profile has the same schema and would
+ * otherwise reuse the first profile's widths. Warmup runs learn from scratch every time;
+ * then one more learning run (sampling + solving) is timed on its own as {@code learn ms},
+ * and the measured iterations reuse its widths as a cached production run would.
+ * Prints rows/sec, p50 and tail run latency and peak heap per target and profile, and exits
+ * with status 1 if any profile failed, so a regression fails the job that runs it. The tail
+ * column is p99 from 100 iterations up; below that the nearest-rank p99 is simply the slowest
+ * run, so it is labelled {@code max}.
+ */
+public final class LoadTestDriver {
+
+    private static final String JP_FONT = "resources/fonts/NotoSansJP-Regular.ttf";
+
+    private static final List<FakeBigQuery.Profile> DEFAULT_PROFILES = Arrays.asList(
+        new FakeBigQuery.Profile("small-latin",    1_000,  20, false,    500,  0),
+        new FakeBigQuery.Profile("large-latin",   20_000,  40, false, 10_000, 20),
+        new FakeBigQuery.Profile("large-japanese", 20_000, 40, true,  10_000, 20),
+        new FakeBigQuery.Profile("long-values",    5_000, 200, false,  5_000, 20)
+    );
+
+    private interface Target {
+        String fetchToken(TokenStubServer stub) throws Exception;
+
+        void export(BigQuery bigquery, Map<String, Integer> colWidths, ColumnLayout autoLayout, Path output)
+                throws Exception;
+
+        /** False when the report's font has no Japanese glyphs (the {@code new} report uses Helvetica). */
+        boolean encodesJapanese();
+    }
+
+    public static void main(String[] args) throws Exception {
+        Map<String, String> opts = parseArgs(args);
+        int iterations = Integer.parseInt(opts.getOrDefault("iterations", "5"));
+        int warmup = Integer.parseInt(opts.getOrDefault("warmup", "2"));
+        String targetOpt = opts.getOrDefault("target", "both");
+
+        List<FakeBigQuery.Profile> profiles = DEFAULT_PROFILES;
+        if (opts.containsKey("rows")) {
+            profiles = Collections.singletonList(new FakeBigQuery.Profile("custom",
+                    Integer.parseInt(opts.get("rows")),
+                    Integer.parseInt(opts.getOrDefault("length", "40")),
+                    opts.containsKey("japanese"),
+                    Integer.parseInt(opts.getOrDefault("page-size", "10000")),
+                    Long.parseLong(opts.getOrDefault("latency-ms", "0"))));
+        }
+
+        Path configPath = Paths.get(opts.getOrDefault("config", "config.yaml"));
+        Map<String, Integer> colWidths = Files.exists(configPath)
+                ? BigQueryWIFPDFBoxNew.loadColumnWidths(configPath.toString())
+                : new HashMap<>();
+        boolean autoLayout = opts.containsKey("auto-layout");
+
+        Map<String, Target> targets = new LinkedHashMap<>();
+        if (!targetOpt.equals("jp")) {
+            targets.put("new", new Target() {
+                @Override
+                public String fetchToken(TokenStubServer stub) throws Exception {
+                    return BigQueryWIFPDFBoxNew.getTokenFromSecureEndpoint(stub.endpoint(), stub.clientPemPath(), stub.caCertPath());
+                }
+
+                @Override
+                public void export(BigQuery bigquery, Map<String, Integer> widths, ColumnLayout layout, Path output)
+                        throws Exception {
+                    BigQueryWIFPDFBoxNew.exportReport(bigquery, widths, layout, output);
+                }
+
+                @Override
+                public boolean encodesJapanese() {
+                    return false;
+                }
+            });
+        }
+        if (!targetOpt.equals("new")) {
+            if (Files.exists(Paths.get(JP_FONT))) {
+                targets.put("jp", new Target() {
+                    @Override
+                    public String fetchToken(TokenStubServer stub) throws Exception {
+                        return BigQueryWIFPDFBoxJp.getTokenFromSecureEndpoint(stub.endpoint(), stub.clientPemPath(), stub.caCertPath());
+                    }
+
+                    @Override
+                    public void export(BigQuery bigquery, Map<String, Integer> widths, ColumnLayout layout, Path output)
+                            throws Exception {
+                        BigQueryWIFPDFBoxJp.exportReport(bigquery, "loadtest-project", widths, layout, output);
+                    }
+
+                    @Override
+                    public boolean encodesJapanese() {
+                        return true;
+                    }
+                });
+            } else {
+                System.out.println("Skipping target jp: " + JP_FONT + " not found");
+            }
+        }
+
+        Path outDir = Files.createTempDirectory("bq-loadtest");
+        List<String> report = new ArrayList<>();
+        report.add(String.format(Locale.ROOT, "%-6s %-60s %12s %10s %10s %10s %12s",
+                "target", "profile", "rows/sec", "p50 ms", iterations >= 100 ? "p99 ms" : "max ms", "learn ms",
+                "peak heap MB"));
+
+        int failures = 0;
+        try (TokenStubServer stub = opts.containsKey("no-token") ? null : TokenStubServer.start()) {
+            for (Map.Entry<String, Target> target : targets.entrySet()) {
+                for (FakeBigQuery.Profile profile : profiles) {
+                    if (profile.japanese && !target.getValue().encodesJapanese()) {
+                        System.out.println("Skipping " + target.getKey() + " " + profile.name + ": font cannot encode Japanese");
+                        continue;
+                    }
+                    try {
+                        report.add(run(target.getKey(), target.getValue(), profile, stub, colWidths, autoLayout,
+                                outDir, warmup, iterations));
+                    } catch (Exception e) {
+                        failures++;
+                        System.err.println("FAILED " + target.getKey() + " " + profile.name);
+                        e.printStackTrace();
+                        report.add(String.format(Locale.ROOT, "%-6s %-60s FAILED: %s", target.getKey(), profile, e));
+                    }
+                }
+            }
+            System.out.println();
+            report.forEach(System.out::println);
+            if (stub != null) System.out.println("tokens issued by stub: " + stub.tokensIssued());
+        } finally {
+            Files.deleteIfExists(outDir);
+        }
+        if (failures > 0) {
+            System.err.println(failures + " load profile(s) failed");
+            System.exit(1);
+        }
+    }
+
+    private static String run(String name, Target target, FakeBigQuery.Profile profile, TokenStubServer stub,
+                              Map<String, Integer> colWidths, boolean autoLayout, Path outDir,
+                              int warmup, int iterations) throws Exception {
+        BigQuery bigquery = FakeBigQuery.create(profile);
+        Path output = outDir.resolve(name + "-" + profile.name + ".pdf");
+        try {
+            for (int i = 0; i < warmup; i++) {
+                runOnce(target, bigquery, stub, colWidths, autoLayout ? ColumnLayout.inMemory() : null, output);
+            }
+
+            // Learn this profile's widths once, timed apart; the iterations then hit the cache
+            ColumnLayout layout = autoLayout ? ColumnLayout.inMemory() : null;
+            String learn = layout == null ? "-" : String.format(Locale.ROOT, "%.1f",
+                    runOnce(target, bigquery, stub, colWidths, layout, output) / 1e6);
+
+            ReportMetrics.reset();
+            System.gc();
+            List<MemoryPoolMXBean> heapPools = heapPools();
+            heapPools.forEach(MemoryPoolMXBean::resetPeakUsage);
+
+            long[] latencies = new long[iterations];
+            long totalNanos = 0;
+            for (int i = 0; i < iterations; i++) {
+                latencies[i] = runOnce(target, bigquery, stub, colWidths, layout, output);
+                totalNanos += latencies[i];
+            }
+
+            // Sum of per-pool peaks; an upper bound on the true simultaneous peak
+            long peakHeap = 0;
+            for (MemoryPoolMXBean pool : heapPools) peakHeap += pool.getPeakUsage().getUsed();
+
+            Arrays.sort(latencies);
+            double rowsPerSec = (double) profile.rows * iterations / (totalNanos / 1e9);
+            if (ReportMetrics.ENABLED) System.out.println(name + " " + profile.name + " " + ReportMetrics.summary());
+            return String.format(Locale.ROOT, "%-6s %-60s %12.0f %10.1f %10.1f %10s %12.1f",
+                    name, profile, rowsPerSec, percentile(latencies, 50) / 1e6, percentile(latencies, 99) / 1e6,
+                    learn, peakHeap / (1024.0 * 1024.0));
+        } finally {
+            try {
+                Files.deleteIfExists(output);
+            } catch (Exception ignored) {
+                // temp file; nothing to do
+            }
+        }
+    }
+
+    private static long runOnce(Target target, BigQuery bigquery, TokenStubServer stub,
+                                Map<String, Integer> colWidths, ColumnLayout layout, Path output) throws Exception {
+        long start = System.nanoTime();
+        if (stub != null) {
+            String token = target.fetchToken(stub);
+            if (token == null || token.isEmpty()) throw new IllegalStateException("Stub returned no token");
+        }
+        target.export(bigquery, colWidths, layout, output);
+        return System.nanoTime() - start;
+    }
+
+    /** Nearest-rank percentile over a sorted array. */
+    static long percentile(long[] sorted, int p) {
+        int rank = (int) Math.ceil(p / 100.0 * sorted.length);
+        return sorted[Math.max(0, Math.min(sorted.length - 1, rank - 1))];
+    }
+
+    private static List<MemoryPoolMXBean> heapPools() {
+        List<MemoryPoolMXBean> pools = new ArrayList<>();
+        for (MemoryPoolMXBean pool : ManagementFactory.getMemoryPoolMXBeans()) {
+            if (pool.getType() == MemoryType.HEAP) pools.add(pool);
+        }
+        return pools;
+    }
+
+    private static Map<String, String> parseArgs(String[] args) {
+        Map<String, String> opts = new HashMap<>();
+        for (String arg : args) {
+            if (!arg.startsWith("--")) throw new IllegalArgumentException("Unknown argument: " + arg);
+            int eq = arg.indexOf('=');
+            if (eq < 0) opts.put(arg.substring(2), "true");
+            else opts.put(arg.substring(2, eq), arg.substring(eq + 1));
+        }
+        return opts;
+    }
+}
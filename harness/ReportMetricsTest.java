@@ -0,0 +1,102 @@
+package org.example;
+
+import org.junit.jupiter.api.BeforeEach;
+import org.junit.jupiter.api.Test;
+import org.junit.jupiter.api.io.TempDir;
+
+import java.io.IOException;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.nio.file.Path;
+
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertFalse;
+import static org.junit.jupiter.api.Assertions.assertTrue;
+
+/** Output formats of the registry; surefire runs with {@code -Dreport.metrics=true}. */
+class ReportMetricsTest {
+
+    @TempDir
+    Path dir;
+
+    @BeforeEach
+    void reset() {
+        assertTrue(ReportMetrics.ENABLED, "run with -Dreport.metrics=true");
+        ReportMetrics.reset();
+    }
+
+    @Test
+    void prometheusExposesCountersTimersAndHistograms() {
+        ReportMetrics.count("rows_total", 3);
+        try (ReportMetrics.Phase phase = ReportMetrics.phase("draw")) {
+            // timed
+        }
+        ReportMetrics.observeRun(100, 2, 50_000, 1_000_000_000L);
+
+        String text = ReportMetrics.prometheus();
+
+        assertTrue(text.contains("# TYPE bq_report_rows_total counter\nbq_report_rows_total 3\n"), text);
+        assertTrue(text.contains("# TYPE bq_report_runs_total counter\nbq_report_runs_total 1\n"), text);
+
+        assertTrue(text.contains("# TYPE bq_report_phase_seconds summary\n"), text);
+        assertTrue(text.contains("bq_report_phase_seconds_count{phase=\"draw\"} 1\n"), text);
+        assertTrue(text.contains("bq_report_phase_seconds_sum{phase=\"draw\"} "), text);
+        assertTrue(text.contains("# TYPE bq_report_phase_max_seconds gauge\n"), text);
+
+        // 100 rows in one second: cumulative buckets, then +Inf, sum and count
+        assertTrue(text.contains("# TYPE bq_report_rows_per_second histogram\n"
+                + "bq_report_rows_per_second_bucket{le=\"1\"} 0\n"
+                + "bq_report_rows_per_second_bucket{le=\"10\"} 0\n"
+                + "bq_report_rows_per_second_bucket{le=\"100\"} 1\n"
+                + "bq_report_rows_per_second_bucket{le=\"1000\"} 1\n"), text);
+        assertTrue(text.contains("bq_report_rows_per_second_bucket{le=\"+Inf\"} 1\n"
+                + "bq_report_rows_per_second_sum 100\n"
+                + "bq_report_rows_per_second_count 1\n"), text);
+        assertTrue(text.contains("bq_report_bytes_written_bucket{le=\"10000\"} 0\n"
+                + "bq_report_bytes_written_bucket{le=\"100000\"} 1\n"), text);
+
+        for (String line : text.split("\n")) {
+            assertTrue(line.startsWith("# TYPE bq_report_") || line.startsWith("bq_report_"), line);
+        }
+    }
+
+    @Test
+    void emptyRegistryExportsNothing() {
+        assertEquals("", ReportMetrics.prometheus());
+        assertEquals("metrics:", ReportMetrics.summary());
+    }
+
+    @Test
+    void summaryIsOneLine() {
+        ReportMetrics.count("rows_total", 3);
+        try (ReportMetrics.Phase phase = ReportMetrics.phase("query")) {
+            // timed
+        }
+        ReportMetrics.observeRun(100, 2, 50_000, 1_000_000_000L);
+
+        String summary = ReportMetrics.summary();
+
+        assertTrue(summary.matches("metrics: query=\\d+\\.\\d{3}s .*"), summary);
+        assertTrue(summary.contains(" rows_total=3"), summary);
+        assertTrue(summary.contains(" runs_total=1"), summary);
+        assertTrue(summary.contains(" rows_per_second=100.0"), summary);
+        assertTrue(summary.contains(" bytes_written=50000.0"), summary);
+        assertFalse(summary.contains("\n"), summary);
+    }
+
+    @Test
+    void textfileHoldsTheFinalExport() throws IOException {
+        ReportMetrics.observeRun(100, 2, 50_000, 1_000_000_000L);
+        Path file = dir.resolve("textfile/bq_report.prom");
+
+        ReportMetrics.writeTextfile(file);
+        ReportMetrics.observeRun(100, 2, 50_000, 1_000_000_000L);
+        ReportMetrics.writeTextfile(file);
+
+        assertEquals(ReportMetrics.prometheus(), new String(Files.readAllBytes(file), StandardCharsets.UTF_8));
+        assertTrue(ReportMetrics.prometheus().contains("bq_report_runs_total 2\n"));
+        try (var files = Files.list(file.getParent())) {
+            assertEquals(1, files.count(), "temp file left behind");
+        }
+    }
+}
@@ -0,0 +1,161 @@
+package org.example;
+
+import com.sun.net.httpserver.HttpsConfigurator;
+import com.sun.net.httpserver.HttpsParameters;
+import com.sun.net.httpserver.HttpsServer;
+
+import javax.net.ssl.SSLContext;
+import javax.net.ssl.SSLParameters;
+import java.io.IOException;
+import java.io.InputStream;
+import java.io.OutputStream;
+import java.net.InetAddress;
+import java.net.InetSocketAddress;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.Paths;
+import java.security.Key;
+import java.security.KeyStore;
+import java.security.SecureRandom;
+import java.security.cert.Certificate;
+import java.util.Base64;
+import java.util.concurrent.Executors;
+import java.util.concurrent.atomic.AtomicLong;
+
+/**
+ * Local stand-in for the WIF token endpoint.
+ *
+ * Generates a throw-away server and client key pair with {@code keytool}, writes them
+ * as {@code client.pem} / {@code ca_chain.crt} (the same files the reports read from
+ * {@code WIF_HOME}) and serves {@code {"access_token": ...}} over HTTPS with client
+ * authentication required. Both sides build their SSL context through {@link PemUtils}.
+ */
+public final class TokenStubServer implements AutoCloseable {
+
+    private static final String STORE_PASS = "changeit";
+
+    private final Path dir;
+    private final HttpsServer server;
+    private final AtomicLong issued = new AtomicLong();
+
+    private TokenStubServer(Path dir, HttpsServer server) {
+        this.dir = dir;
+        this.server = server;
+    }
+
+    public static TokenStubServer start() throws Exception {
+        Path dir = Files.createTempDirectory("wif-stub");
+
+        String serverPem = generatePem(dir, "server", "CN=localhost", "SAN=dns:localhost,ip:127.0.0.1");
+        String clientPem = generatePem(dir, "client", "CN=loadtest-client", null);
+
+        // The client trusts the (self-signed) server cert as its CA chain and vice versa
+        Files.writeString(dir.resolve("client.pem"), clientPem);
+        Files.writeString(dir.resolve("ca_chain.crt"), certificateOnly(serverPem));
+
+        SSLContext sslContext = SSLContext.getInstance("TLS");
+        sslContext.init(
+            PemUtils.createKeyManagerFactory(serverPem).getKeyManagers(),
+            PemUtils.createTrustManagerFactory(certificateOnly(clientPem)).getTrustManagers(),
+            new SecureRandom()
+        );
+
+        HttpsServer server = HttpsServer.create(new InetSocketAddress(InetAddress.getLoopbackAddress(), 0), 0);
+        server.setHttpsConfigurator(new HttpsConfigurator(sslContext) {
+            @Override
+            public void configure(HttpsParameters params) {
+                SSLParameters ssl = sslContext.getDefaultSSLParameters();
+                ssl.setNeedClientAuth(true);
+                params.setSSLParameters(ssl);
+            }
+        });
+
+        TokenStubServer stub = new TokenStubServer(dir, server);
+        server.createContext("/", exchange -> {
+            byte[] body = ("{\"access_token\":\"stub-token-" + stub.issued.incrementAndGet()
+                    + "\",\"expires_in\":3600,\"token_type\":\"Bearer\"}").getBytes(StandardCharsets.UTF_8);
+            exchange.getResponseHeaders().set("Content-Type", "application/json");
+            exchange.sendResponseHeaders(200, body.length);
+            try (OutputStream out = exchange.getResponseBody()) {
+                out.write(body);
+            }
+        });
+        server.setExecutor(Executors.newCachedThreadPool(r -> {
+            Thread t = new Thread(r, "wif-stub");
+            t.setDaemon(true);
+            return t;
+        }));
+        server.start();
+        return stub;
+    }
+
+    public String endpoint() {
+        return "https://localhost:" + server.getAddress().getPort() + "/";
+    }
+
+    public String clientPemPath() {
+        return dir.resolve("client.pem").toString();
+    }
+
+    public String caCertPath() {
+        return dir.resolve("ca_chain.crt").toString();
+    }
+
+    public long tokensIssued() {
+        return issued.get();
+    }
+
+    @Override
+    public void close() throws IOException {
+        server.stop(0);
+        try (var files = Files.list(dir)) {
+            for (Path p : (Iterable<Path>) files::iterator) Files.deleteIfExists(p);
+        }
+        Files.deleteIfExists(dir);
+    }
+
+    // ─────────────────────────────────────────────────────────────────────────────
+    //  CERT GENERATION
+    // ─────────────────────────────────────────────────────────────────────────────
+
+    /** Self-signed RSA key pair as "PRIVATE KEY" + "CERTIFICATE" PEM sections. */
+    private static String generatePem(Path dir, String alias, String dname, String san) throws Exception {
+        Path store = dir.resolve(alias + ".p12");
+        String keytool = Paths.get(System.getProperty("java.home"), "bin", "keytool").toString();
+
+        ProcessBuilder pb = new ProcessBuilder(keytool, "-genkeypair",
+                "-alias", alias, "-keyalg", "RSA", "-keysize", "2048", "-validity", "2",
+                "-dname", dname, "-storetype", "PKCS12", "-keystore", store.toString(),
+                "-storepass", STORE_PASS, "-keypass", STORE_PASS);
+        if (san != null) {
+            pb.command().add("-ext");
+            pb.command().add(san);
+        }
+        Process process = pb.redirectErrorStream(true).start();
+        String output = new String(process.getInputStream().readAllBytes(), StandardCharsets.UTF_8);
+        if (process.waitFor() != 0) {
+            throw new IllegalStateException("keytool failed for " + alias + ": " + output);
+        }
+
+        KeyStore ks = KeyStore.getInstance("PKCS12");
+        try (InputStream in = Files.newInputStream(store)) {
+            ks.load(in, STORE_PASS.toCharArray());
+        }
+        Key key = ks.getKey(alias, STORE_PASS.toCharArray());
+        Certificate cert = ks.getCertificate(alias);
+        Files.delete(store);
+
+        return pem("PRIVATE KEY", key.getEncoded()) + pem("CERTIFICATE", cert.getEncoded());
+    }
+
+    private static String certificateOnly(String pem) {
+        return pem.substring(pem.indexOf("-----BEGIN CERTIFICATE-----"));
+    }
+
+    private static String pem(String section, byte[] der) {
+        return "-----BEGIN " + section + "-----\n"
+                + Base64.getMimeEncoder(64, "\n".getBytes(StandardCharsets.US_ASCII)).encodeToString(der)
+                + "\n-----END " + section + "-----\n";
+    }
+}
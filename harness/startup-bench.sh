@@ -0,0 +1,63 @@
+#!/usr/bin/env bash
+#
+# Startup-time comparison: shaded jar vs. shaded jar + AppCDS vs. native image.
+#
+# Every variant runs StartupProbe RUNS times: the real BigQuery client (credentials,
+# BigQueryOptions, HTTP transport, REST JSON model) against a loopback stub, then the
+# report render for 1000 rows. The script prints min / median / max wall-clock
+# milliseconds per variant.
+#
+# Build from the repo root first; the native build must come first because the AppCDS
+# archive is only valid for the exact jar it was trained on:
+#
+#   mvn -B -Pnative -Dmain.class=org.example.StartupProbe package
+#   mvn -B -Pappcds package
+#   harness/startup-bench.sh
+#
+set -euo pipefail
+
+cd "$(dirname "$0")/.."
+
+RUNS=${RUNS:-10}
+JAVA=${JAVA:-java}
+JAR=target/bigquery-wif-pdf-report.jar
+JSA=target/bigquery-wif-pdf-report.jsa
+NATIVE=target/bigquery-wif-pdf-report
+ROWS=(1000)
+
+now_ms() {
+    echo $(( $(date +%s%N) / 1000000 ))
+}
+
+bench() {
+    local name=$1
+    shift
+    local times=()
+    for _ in $(seq "$RUNS"); do
+        local start end
+        start=$(now_ms)
+        "$@" > /dev/null
+        end=$(now_ms)
+        times+=($(( end - start )))
+    done
+    local sorted
+    sorted=($(printf '%s\n' "${times[@]}" | sort -n))
+    printf '%-14s min %6d ms   median %6d ms   max %6d ms\n' \
+        "$name" "${sorted[0]}" "${sorted[$(( RUNS / 2 ))]}" "${sorted[$(( RUNS - 1 ))]}"
+}
+
+[ -f "$JAR" ] || { echo "missing $JAR (mvn -Pappcds package)" >&2; exit 1; }
+
+bench "jar" "$JAVA" -Xshare:auto -cp "$JAR" org.example.StartupProbe "${ROWS[@]}"
+
+if [ -f "$JSA" ]; then
+    bench "jar+AppCDS" "$JAVA" -XX:SharedArchiveFile="$JSA" -cp "$JAR" org.example.StartupProbe "${ROWS[@]}"
+else
+    echo "skipping jar+AppCDS: $JSA not found"
+fi
+
+if [ -x "$NATIVE" ]; then
+    bench "native-image" "$NATIVE" "${ROWS[@]}"
+else
+    echo "skipping native-image: $NATIVE not found"
+fi